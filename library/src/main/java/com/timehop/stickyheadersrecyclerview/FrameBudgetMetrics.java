@@ -0,0 +1,220 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.os.Debug;
+
+/**
+ * A {@link StickyHeadersMetrics} that enforces per-frame budgets on the work done for headers. It is
+ * meant for debug builds and tests that scroll a list for many frames, so that a
+ * regression such as an allocation in {@code onDrawOver} fails loudly instead of showing up later in
+ * allocation traces.
+ *
+ * <pre>
+ * FrameBudgetMetrics budget = new FrameBudgetMetrics();
+ * budget.setWarmUpFrames(10);
+ * budget.setMaxHeaderIdLookups(0);
+ * budget.setMaxAllocations(0);
+ * headersDecor.setSectionIndexEnabled(true);
+ * headersDecor.setMetrics(budget);
+ * </pre>
+ *
+ * Budgets are only checked once the warm up frames have passed, since the first frames create the
+ * headers on screen. A frame over budget throws an {@link IllegalStateException} unless an
+ * {@link OnBudgetExceededListener} is set.
+ *
+ * Allocations are only counted inside the passes of the decoration, since the RecyclerView binding and
+ * laying out items allocates on its own. Once the headers of the scrolled range are cached, a realistic
+ * budget is zero for every counter with the section index enabled. Without the index, the adapter is asked
+ * for up to two header ids per laid out item and frame. Scrolling into sections that weren't cached yet
+ * costs a bind and a measure per new header, and a creation whenever the header pool is empty.
+ */
+public class FrameBudgetMetrics implements StickyHeadersMetrics {
+
+  public static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private int mMaxHeaderIdLookups = UNLIMITED;
+  private int mMaxHeaderCreations = UNLIMITED;
+  private int mMaxHeaderMeasures = UNLIMITED;
+  private int mMaxAllocations = UNLIMITED;
+  private int mWarmUpFrames;
+  private OnBudgetExceededListener mOnBudgetExceededListener;
+
+  private int mFrameCount;
+  private int mHeaderCreations;
+  private int mHeaderMeasures;
+  private boolean mCountingAllocations;
+  private int mPassStartAllocationCount;
+  private int mAllocations;
+
+  /**
+   * @param maxHeaderIdLookups maximum number of adapter {@code getHeaderId} calls per frame
+   */
+  public void setMaxHeaderIdLookups(int maxHeaderIdLookups) {
+    mMaxHeaderIdLookups = maxHeaderIdLookups;
+  }
+
+  /**
+   * @param maxHeaderCreations maximum number of header ViewHolders created per frame
+   */
+  public void setMaxHeaderCreations(int maxHeaderCreations) {
+    mMaxHeaderCreations = maxHeaderCreations;
+  }
+
+  /**
+   * @param maxHeaderMeasures maximum number of header measure passes per frame
+   */
+  public void setMaxHeaderMeasures(int maxHeaderMeasures) {
+    mMaxHeaderMeasures = maxHeaderMeasures;
+  }
+
+  /**
+   * Sets the maximum number of objects the decoration may allocate in the passes of a frame: its
+   * {@code onDrawOver} and the {@code getItemOffsets} calls since the previous frame. Setting a limit
+   * turns on VM allocation counting with {@link Debug#startAllocCounting()}, which slows down every
+   * allocation, so it should only be used in tests. Call {@link #stopAllocationCounting()} when done.
+   * Tests on the JVM, which has no such counter, can count allocations another way by overriding
+   * {@link #startAllocCounting()}, {@link #stopAllocCounting()} and {@link #getThreadAllocCount()}.
+   *
+   * @param maxAllocations maximum number of allocations per frame, or {@link #UNLIMITED}
+   */
+  public void setMaxAllocations(int maxAllocations) {
+    mMaxAllocations = maxAllocations;
+    if (maxAllocations != UNLIMITED && !mCountingAllocations) {
+      startAllocCounting();
+      mCountingAllocations = true;
+      mAllocations = 0;
+    } else if (maxAllocations == UNLIMITED) {
+      stopAllocationCounting();
+    }
+  }
+
+  /**
+   * Turns VM allocation counting off again, and stops checking the allocation budget.
+   */
+  public void stopAllocationCounting() {
+    if (mCountingAllocations) {
+      stopAllocCounting();
+      mCountingAllocations = false;
+    }
+    mMaxAllocations = UNLIMITED;
+  }
+
+  /**
+   * @param warmUpFrames number of frames to let pass before budgets are checked
+   */
+  public void setWarmUpFrames(int warmUpFrames) {
+    mWarmUpFrames = warmUpFrames;
+  }
+
+  /**
+   * @param listener notified of frames over budget instead of throwing, or null to throw
+   */
+  public void setOnBudgetExceededListener(OnBudgetExceededListener listener) {
+    mOnBudgetExceededListener = listener;
+  }
+
+  /**
+   * @return number of frames seen so far
+   */
+  public int getFrameCount() {
+    return mFrameCount;
+  }
+
+  /**
+   * Starts counting allocations, with {@link Debug#startAllocCounting()} by default.
+   */
+  @SuppressWarnings("deprecation")
+  protected void startAllocCounting() {
+    Debug.startAllocCounting();
+  }
+
+  /**
+   * Stops counting allocations, with {@link Debug#stopAllocCounting()} by default.
+   */
+  @SuppressWarnings("deprecation")
+  protected void stopAllocCounting() {
+    Debug.stopAllocCounting();
+  }
+
+  /**
+   * @return allocations counted on the current thread so far, read with {@link Debug#getThreadAllocCount()}
+   * by default. Only the difference between two reads is used, so the count may wrap around.
+   */
+  @SuppressWarnings("deprecation")
+  protected int getThreadAllocCount() {
+    return Debug.getThreadAllocCount();
+  }
+
+  @Override
+  public void onPassStarted() {
+    if (mCountingAllocations) {
+      mPassStartAllocationCount = getThreadAllocCount();
+    }
+  }
+
+  @Override
+  public void onPassFinished() {
+    if (mCountingAllocations) {
+      mAllocations += getThreadAllocCount() - mPassStartAllocationCount;
+    }
+  }
+
+  @Override
+  public void onFrame(long drawOverNanos, long itemOffsetsNanos, int headersDrawn, int headerIdLookups) {
+    int allocations = mAllocations;
+    mAllocations = 0;
+    int headerCreations = mHeaderCreations;
+    int headerMeasures = mHeaderMeasures;
+    mHeaderCreations = 0;
+    mHeaderMeasures = 0;
+    mFrameCount++;
+    if (mFrameCount <= mWarmUpFrames) {
+      return;
+    }
+
+    checkBudget("getHeaderId calls", headerIdLookups, mMaxHeaderIdLookups);
+    checkBudget("header creations", headerCreations, mMaxHeaderCreations);
+    checkBudget("header measures", headerMeasures, mMaxHeaderMeasures);
+    checkBudget("allocations", allocations, mMaxAllocations);
+  }
+
+  private void checkBudget(String name, int value, int budget) {
+    if (value <= budget) {
+      return;
+    }
+    if (mOnBudgetExceededListener != null) {
+      mOnBudgetExceededListener.onBudgetExceeded(mFrameCount, name, value, budget);
+    } else {
+      throw new IllegalStateException("Frame " + mFrameCount + " made " + value + " " + name
+          + ", budget is " + budget);
+    }
+  }
+
+  @Override
+  public void onHeaderCacheHit() {
+  }
+
+  @Override
+  public void onHeaderCacheMiss() {
+  }
+
+  @Override
+  public void onHeaderCreated() {
+    mHeaderCreations++;
+  }
+
+  @Override
+  public void onHeaderBound() {
+  }
+
+  @Override
+  public void onHeaderMeasured() {
+    mHeaderMeasures++;
+  }
+
+  /**
+   * Notified when a frame goes over one of its budgets.
+   */
+  public interface OnBudgetExceededListener {
+    void onBudgetExceeded(int frame, String budget, int value, int limit);
+  }
+}
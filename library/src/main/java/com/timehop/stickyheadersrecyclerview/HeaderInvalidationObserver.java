@@ -0,0 +1,119 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * An {@link RecyclerView.AdapterDataObserver} that invalidates only the headers affected by each change
+ * of the adapter. Register it on the adapter used by the {@link StickyRecyclerHeadersDecoration}:
+ *
+ * <pre>
+ * adapter.registerAdapterDataObserver(new HeaderInvalidationObserver(headersDecor));
+ * </pre>
+ *
+ * The header ids of removed items can't be read from the adapter anymore, so the sections bordering a
+ * removal are invalidated instead. Those are the sections that lost the items unless a whole section
+ * was removed, in which case its cached header is simply never requested again.
+ *
+ * While the decoration's section index is enabled, changes are handled once the index has been updated
+ * with them, so the affected sections are read from the index rather than from the adapter.
+ */
+public class HeaderInvalidationObserver extends RecyclerView.AdapterDataObserver {
+
+  private final StickyRecyclerHeadersDecoration mDecoration;
+
+  /**
+   * Receives the changes from the section index, after it has been updated with them.
+   */
+  private final RecyclerView.AdapterDataObserver mIndexedObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      invalidateAll();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      invalidateChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      invalidateInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      invalidateRemoved(positionStart);
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      invalidateMoved(fromPosition, toPosition, itemCount);
+    }
+  };
+
+  public HeaderInvalidationObserver(StickyRecyclerHeadersDecoration decoration) {
+    mDecoration = decoration;
+    mDecoration.getSectionIndex().addUpdateObserver(mIndexedObserver);
+  }
+
+  @Override
+  public void onChanged() {
+    if (!mDecoration.getSectionIndex().isEnabled()) {
+      invalidateAll();
+    }
+  }
+
+  @Override
+  public void onItemRangeChanged(int positionStart, int itemCount) {
+    if (!mDecoration.getSectionIndex().isEnabled()) {
+      invalidateChanged(positionStart, itemCount);
+    }
+  }
+
+  @Override
+  public void onItemRangeInserted(int positionStart, int itemCount) {
+    if (!mDecoration.getSectionIndex().isEnabled()) {
+      invalidateInserted(positionStart, itemCount);
+    }
+  }
+
+  @Override
+  public void onItemRangeRemoved(int positionStart, int itemCount) {
+    if (!mDecoration.getSectionIndex().isEnabled()) {
+      invalidateRemoved(positionStart);
+    }
+  }
+
+  @Override
+  public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+    if (!mDecoration.getSectionIndex().isEnabled()) {
+      invalidateMoved(fromPosition, toPosition, itemCount);
+    }
+  }
+
+  private void invalidateAll() {
+    mDecoration.invalidateHeaders();
+  }
+
+  private void invalidateChanged(int positionStart, int itemCount) {
+    // The neighbours cover items that moved to an adjacent section
+    mDecoration.invalidateHeadersInRange(positionStart - 1, itemCount + 2);
+  }
+
+  private void invalidateInserted(int positionStart, int itemCount) {
+    mDecoration.invalidateHeadersInRange(positionStart, itemCount);
+  }
+
+  private void invalidateRemoved(int positionStart) {
+    mDecoration.invalidateHeadersInRange(positionStart - 1, 2);
+  }
+
+  private void invalidateMoved(int fromPosition, int toPosition, int itemCount) {
+    mDecoration.invalidateHeadersInRange(toPosition, itemCount);
+    // The items that surrounded the moved range before the move
+    int previousNeighbour = fromPosition < toPosition ? fromPosition - 1 : fromPosition - 1 + itemCount;
+    int nextNeighbour = fromPosition < toPosition ? fromPosition : fromPosition + itemCount;
+    mDecoration.invalidateHeadersInRange(previousNeighbour, 1);
+    mDecoration.invalidateHeadersInRange(nextNeighbour, 1);
+  }
+}
@@ -1,14 +1,15 @@
 package com.timehop.stickyheadersrecyclerview;
 
 import android.graphics.Rect;
-import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
 
 import com.timehop.stickyheadersrecyclerview.caching.HeaderProvider;
+import com.timehop.stickyheadersrecyclerview.caching.SectionIndex;
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
 /**
@@ -17,6 +18,7 @@ import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 public class HeaderPositionCalculator {
 
   private final StickyRecyclerHeadersAdapter mAdapter;
+  private final SectionIndex mSectionIndex;
   private final OrientationProvider mOrientationProvider;
   private final HeaderProvider mHeaderProvider;
   private final DimensionCalculator mDimensionCalculator;
@@ -27,10 +29,18 @@ public class HeaderPositionCalculator {
    */
   private final Rect mTempRect1 = new Rect();
   private final Rect mTempRect2 = new Rect();
+  private final LayoutSnapshot mLayoutSnapshot = new LayoutSnapshot();
 
   public HeaderPositionCalculator(StickyRecyclerHeadersAdapter adapter, HeaderProvider headerProvider,
       OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator) {
+    this(adapter, new SectionIndex(adapter), headerProvider, orientationProvider, dimensionCalculator);
+  }
+
+  public HeaderPositionCalculator(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      HeaderProvider headerProvider, OrientationProvider orientationProvider,
+      DimensionCalculator dimensionCalculator) {
     mAdapter = adapter;
+    mSectionIndex = sectionIndex;
     mHeaderProvider = headerProvider;
     mOrientationProvider = orientationProvider;
     mDimensionCalculator = dimensionCalculator;
@@ -58,7 +68,7 @@ public class HeaderPositionCalculator {
       margin = mTempRect1.left;
     }
 
-    return offset <= margin && mAdapter.getHeaderId(position) >= 0;
+    return offset <= margin && mSectionIndex.getHeaderId(position) >= 0;
   }
 
   /**
@@ -74,7 +84,12 @@ public class HeaderPositionCalculator {
       return false;
     }
 
-    long headerId = mAdapter.getHeaderId(position);
+    if (mSectionIndex.isEnabled()) {
+      return mSectionIndex.getHeaderId(position) >= 0
+          && (isReverseLayout ? mSectionIndex.isSectionEnd(position) : mSectionIndex.isSectionStart(position));
+    }
+
+    long headerId = mSectionIndex.getHeaderId(position);
 
     if (headerId < 0) {
       return false;
@@ -83,31 +98,79 @@ public class HeaderPositionCalculator {
     long nextItemHeaderId = -1;
     int nextItemPosition = position + (isReverseLayout? 1: -1);
     if (!indexOutOfBounds(nextItemPosition)){
-      nextItemHeaderId = mAdapter.getHeaderId(nextItemPosition);
+      nextItemHeaderId = mSectionIndex.getHeaderId(nextItemPosition);
     }
     int firstItemPosition = isReverseLayout? mAdapter.getItemCount()-1 : 0;
 
     return position == firstItemPosition || headerId != nextItemHeaderId;
   }
 
+  /**
+   * Determines if the header of a section start, drawn where {@link #initHeaderBounds} would place it,
+   * would be at least partially inside the visible area of the RecyclerView. The header is pinned to the
+   * start of the list, so only headers past its end can be skipped. Headers scrolled before the start
+   * are drawn pinned there, over the sticky header, and are not culled.
+   *
+   * @param layout   snapshot of the RecyclerView containing the item
+   * @param header   header of the item's section
+   * @param itemView first item of the section
+   * @return false if drawing the header can be skipped
+   */
+  public boolean isHeaderInViewport(LayoutSnapshot layout, View header, View itemView) {
+    mDimensionCalculator.initMargins(mTempRect1, header);
+    ViewGroup.LayoutParams layoutParams = itemView.getLayoutParams();
+    ViewGroup.MarginLayoutParams marginLayoutParams = layoutParams instanceof ViewGroup.MarginLayoutParams
+        ? (ViewGroup.MarginLayoutParams) layoutParams : null;
+
+    if (layout.isVertical()) {
+      int headerTop = Math.max(
+          itemView.getTop() - (marginLayoutParams != null ? marginLayoutParams.topMargin : 0)
+              - mTempRect1.bottom - header.getHeight(),
+          layout.getListTop() + mTempRect1.top);
+      return headerTop + header.getHeight() > layout.getListTop() && headerTop < layout.getListBottom();
+    } else {
+      int headerLeft = Math.max(
+          itemView.getLeft() - (marginLayoutParams != null ? marginLayoutParams.leftMargin : 0)
+              - mTempRect1.right - header.getWidth(),
+          layout.getListLeft() + mTempRect1.left);
+      return headerLeft + header.getWidth() > layout.getListLeft() && headerLeft < layout.getListRight();
+    }
+  }
+
   private boolean indexOutOfBounds(int position) {
-    return position < 0 || position >= mAdapter.getItemCount();
+    int itemCount = mSectionIndex.isEnabled() ? mSectionIndex.getItemCount() : mAdapter.getItemCount();
+    return position < 0 || position >= itemCount;
   }
 
   public void initHeaderBounds(Rect bounds, RecyclerView recyclerView, View header, View firstView, boolean firstHeader) {
-    int orientation = mOrientationProvider.getOrientation(recyclerView);
-    initDefaultHeaderOffset(bounds, recyclerView, header, firstView, orientation);
+    mLayoutSnapshot.capture(recyclerView, mOrientationProvider);
+    View nextHeaderView = firstHeader ? findNextHeaderView(recyclerView, mLayoutSnapshot, firstView) : null;
+    initHeaderBounds(bounds, recyclerView, mLayoutSnapshot, header, firstView, firstHeader, nextHeaderView);
+  }
 
-    if (firstHeader && isStickyHeaderBeingPushedOffscreen(recyclerView, header)) {
-      View viewAfterNextHeader = getFirstViewUnobscuredByHeader(recyclerView, header);
-      int firstViewUnderHeaderPosition = recyclerView.getChildAdapterPosition(viewAfterNextHeader);
-      View secondHeader = mHeaderProvider.getHeader(recyclerView, firstViewUnderHeaderPosition);
-      translateHeaderWithNextHeader(recyclerView, mOrientationProvider.getOrientation(recyclerView), bounds,
-          header, viewAfterNextHeader, secondHeader);
+  /**
+   * Initializes the bounds of a header, from the position of the first item of its section or, for the
+   * sticky header, from the start of the list and the position of the next header.
+   *
+   * @param bounds         to initialize
+   * @param recyclerView   containing the item
+   * @param layout         snapshot of the RecyclerView taken at the start of the current pass
+   * @param header         to position
+   * @param firstView      item the header belongs to
+   * @param firstHeader    true if this is the sticky header
+   * @param nextHeaderView for the sticky header, the laid out item that starts the next section with a
+   *                       header in layout order, or null if there is none
+   */
+  public void initHeaderBounds(Rect bounds, RecyclerView recyclerView, LayoutSnapshot layout, View header,
+      View firstView, boolean firstHeader, View nextHeaderView) {
+    initDefaultHeaderOffset(bounds, layout, header, firstView);
+
+    if (firstHeader && nextHeaderView != null) {
+      translateHeaderWithNextHeader(bounds, recyclerView, layout, header, nextHeaderView);
     }
   }
 
-  private void initDefaultHeaderOffset(Rect headerMargins, RecyclerView recyclerView, View header, View firstView, int orientation) {
+  private void initDefaultHeaderOffset(Rect headerMargins, LayoutSnapshot layout, View header, View firstView) {
     int translationX, translationY;
     mDimensionCalculator.initMargins(mTempRect1, header);
 
@@ -120,142 +183,96 @@ public class HeaderPositionCalculator {
       topMargin = marginLayoutParams.topMargin;
     }
 
-    if (orientation == LinearLayoutManager.VERTICAL) {
+    if (layout.isVertical()) {
       translationX = firstView.getLeft() - leftMargin + mTempRect1.left;
       translationY = Math.max(
           firstView.getTop() - topMargin - header.getHeight() - mTempRect1.bottom,
-          getListTop(recyclerView) + mTempRect1.top);
+          layout.getListTop() + mTempRect1.top);
     } else {
       translationY = firstView.getTop() - topMargin + mTempRect1.top;
       translationX = Math.max(
           firstView.getLeft() - leftMargin - header.getWidth() - mTempRect1.right,
-          getListLeft(recyclerView) + mTempRect1.left);
+          layout.getListLeft() + mTempRect1.left);
     }
 
     headerMargins.set(translationX, translationY, translationX + header.getWidth(),
             translationY + header.getHeight());
   }
 
-  private boolean isStickyHeaderBeingPushedOffscreen(RecyclerView recyclerView, View stickyHeader) {
-    View viewAfterHeader = getFirstViewUnobscuredByHeader(recyclerView, stickyHeader);
-    int firstViewUnderHeaderPosition = recyclerView.getChildAdapterPosition(viewAfterHeader);
-    if (firstViewUnderHeaderPosition == RecyclerView.NO_POSITION) {
-        return false;
-    }
-
-    boolean isReverseLayout = mOrientationProvider.isReverseLayout(recyclerView);
-    if (firstViewUnderHeaderPosition > 0 && hasNewHeader(firstViewUnderHeaderPosition, isReverseLayout)) {
-      View nextHeader = mHeaderProvider.getHeader(recyclerView, firstViewUnderHeaderPosition);
-      mDimensionCalculator.initMargins(mTempRect1, nextHeader);
-      mDimensionCalculator.initMargins(mTempRect2, stickyHeader);
-
-      if (mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL) {
-        int topOfNextHeader = viewAfterHeader.getTop() - mTempRect1.bottom - nextHeader.getHeight() - mTempRect1.top;
-        int bottomOfThisHeader = recyclerView.getPaddingTop() + stickyHeader.getBottom() + mTempRect2.top + mTempRect2.bottom;
-        if (topOfNextHeader < bottomOfThisHeader) {
-          return true;
-        }
-      } else {
-        int leftOfNextHeader = viewAfterHeader.getLeft() - mTempRect1.right - nextHeader.getWidth() - mTempRect1.left;
-        int rightOfThisHeader = recyclerView.getPaddingLeft() + stickyHeader.getRight() + mTempRect2.left + mTempRect2.right;
-        if (leftOfNextHeader < rightOfThisHeader) {
-          return true;
-        }
-      }
+  /**
+   * Moves the sticky header out of the way of the header of the next section, once that header reaches
+   * it. Both edges of the bounds move, so the sticky header keeps its size while it is pushed off.
+   *
+   * @param bounds              of the sticky header, at its default location
+   * @param recyclerView        containing the items
+   * @param layout              snapshot of the RecyclerView
+   * @param stickyHeader        the sticky header
+   * @param viewAfterNextHeader item that starts the next section
+   */
+  private void translateHeaderWithNextHeader(Rect bounds, RecyclerView recyclerView, LayoutSnapshot layout,
+      View stickyHeader, View viewAfterNextHeader) {
+    int nextHeaderPosition = recyclerView.getChildAdapterPosition(viewAfterNextHeader);
+    if (nextHeaderPosition == RecyclerView.NO_POSITION) {
+      return;
     }
 
-    return false;
-  }
-
-  private void translateHeaderWithNextHeader(RecyclerView recyclerView, int orientation, Rect translation,
-    View currentHeader, View viewAfterNextHeader, View nextHeader) {
+    View nextHeader = mHeaderProvider.getHeader(recyclerView, nextHeaderPosition);
     mDimensionCalculator.initMargins(mTempRect1, nextHeader);
-    mDimensionCalculator.initMargins(mTempRect2, currentHeader);
-    if (orientation == LinearLayoutManager.VERTICAL) {
-      int topOfStickyHeader = getListTop(recyclerView) + mTempRect2.top + mTempRect2.bottom;
-      int shiftFromNextHeader = viewAfterNextHeader.getTop() - nextHeader.getHeight() - mTempRect1.bottom - mTempRect1.top - currentHeader.getHeight() - topOfStickyHeader;
-      if (shiftFromNextHeader < topOfStickyHeader) {
-        translation.top += shiftFromNextHeader;
+    mDimensionCalculator.initMargins(mTempRect2, stickyHeader);
+    ViewGroup.LayoutParams layoutParams = viewAfterNextHeader.getLayoutParams();
+    ViewGroup.MarginLayoutParams marginLayoutParams = layoutParams instanceof ViewGroup.MarginLayoutParams
+        ? (ViewGroup.MarginLayoutParams) layoutParams : null;
+
+    if (layout.isVertical()) {
+      int topOfNextHeader = viewAfterNextHeader.getTop()
+          - (marginLayoutParams != null ? marginLayoutParams.topMargin : 0)
+          - mTempRect1.bottom - nextHeader.getHeight() - mTempRect1.top;
+      int bottomOfStickyHeader = bounds.bottom + mTempRect2.bottom;
+      if (bottomOfStickyHeader > topOfNextHeader) {
+        bounds.offset(0, topOfNextHeader - bottomOfStickyHeader);
       }
     } else {
-      int leftOfStickyHeader = getListLeft(recyclerView) + mTempRect2.left + mTempRect2.right;
-      int shiftFromNextHeader = viewAfterNextHeader.getLeft() - nextHeader.getWidth() - mTempRect1.right - mTempRect1.left - currentHeader.getWidth() - leftOfStickyHeader;
-      if (shiftFromNextHeader < leftOfStickyHeader) {
-        translation.left += shiftFromNextHeader;
-      }
-    }
-  }
-
-  /**
-   * Returns the first item currently in the RecyclerView that is not obscured by a header.
-   *
-   * @param parent Recyclerview containing all the list items
-   * @return first item that is fully beneath a header
-   */
-  private View getFirstViewUnobscuredByHeader(RecyclerView parent, View firstHeader) {
-    boolean isReverseLayout = mOrientationProvider.isReverseLayout(parent);
-    int step = isReverseLayout? -1 : 1;
-    int from = isReverseLayout? parent.getChildCount()-1 : 0;
-    for (int i = from; i >= 0 && i <= parent.getChildCount() - 1; i += step) {
-      View child = parent.getChildAt(i);
-      if (!itemIsObscuredByHeader(parent, child, firstHeader, mOrientationProvider.getOrientation(parent))) {
-        return child;
+      int leftOfNextHeader = viewAfterNextHeader.getLeft()
+          - (marginLayoutParams != null ? marginLayoutParams.leftMargin : 0)
+          - mTempRect1.right - nextHeader.getWidth() - mTempRect1.left;
+      int rightOfStickyHeader = bounds.right + mTempRect2.right;
+      if (rightOfStickyHeader > leftOfNextHeader) {
+        bounds.offset(leftOfNextHeader - rightOfStickyHeader, 0);
       }
     }
-    return null;
   }
 
   /**
-   * Determines if an item is obscured by a header
-   *
+   * Finds the laid out item that starts the next section with a header after the section of an item, in
+   * layout order. Only the laid out items can push the sticky header, so only they are checked.
    *
-   * @param parent
-   * @param item        to determine if obscured by header
-   * @param header      that might be obscuring the item
-   * @param orientation of the {@link RecyclerView}
-   * @return true if the item view is obscured by the header view
+   * @param recyclerView containing the items
+   * @param layout       snapshot of the RecyclerView
+   * @param firstView    item the sticky header belongs to
+   * @return the item, or null if none of the laid out items starts a section after it
    */
-  private boolean itemIsObscuredByHeader(RecyclerView parent, View item, View header, int orientation) {
-    RecyclerView.LayoutParams layoutParams = (RecyclerView.LayoutParams) item.getLayoutParams();
-    mDimensionCalculator.initMargins(mTempRect1, header);
-
-    int adapterPosition = parent.getChildAdapterPosition(item);
-    if (adapterPosition == RecyclerView.NO_POSITION || mHeaderProvider.getHeader(parent, adapterPosition) != header) {
-      // Resolves https://github.com/timehop/sticky-headers-recyclerview/issues/36
-      // Handles an edge case where a trailing header is smaller than the current sticky header.
-      return false;
+  private View findNextHeaderView(RecyclerView recyclerView, LayoutSnapshot layout, View firstView) {
+    int position = recyclerView.getChildAdapterPosition(firstView);
+    if (position == RecyclerView.NO_POSITION) {
+      return null;
     }
-
-    if (orientation == LinearLayoutManager.VERTICAL) {
-      int itemTop = item.getTop() - layoutParams.topMargin;
-      int headerBottom = getListTop(parent) + header.getBottom() + mTempRect1.bottom + mTempRect1.top;
-      if (itemTop >= headerBottom) {
-        return false;
-      }
-    } else {
-      int itemLeft = item.getLeft() - layoutParams.leftMargin;
-      int headerRight = getListLeft(parent) + header.getRight() + mTempRect1.right + mTempRect1.left;
-      if (itemLeft >= headerRight) {
-        return false;
+    boolean isReverseLayout = layout.isReverseLayout();
+    View nextHeaderView = null;
+    int nextHeaderPosition = RecyclerView.NO_POSITION;
+    int childCount = recyclerView.getChildCount();
+    for (int i = 0; i < childCount; i++) {
+      // Children are usually in adapter order, so the closest candidates come first
+      View child = recyclerView.getChildAt(isReverseLayout ? childCount - 1 - i : i);
+      int childPosition = recyclerView.getChildAdapterPosition(child);
+      boolean after = isReverseLayout ? childPosition < position : childPosition > position;
+      boolean closer = nextHeaderView == null
+          || (isReverseLayout ? childPosition > nextHeaderPosition : childPosition < nextHeaderPosition);
+      if (childPosition != RecyclerView.NO_POSITION && after && closer
+          && hasNewHeader(childPosition, isReverseLayout)) {
+        nextHeaderView = child;
+        nextHeaderPosition = childPosition;
       }
     }
-
-    return true;
-  }
-
-  private int getListTop(RecyclerView view) {
-    if (view.getLayoutManager().getClipToPadding()) {
-      return view.getPaddingTop();
-    } else {
-      return 0;
-    }
-  }
-
-  private int getListLeft(RecyclerView view) {
-    if (view.getLayoutManager().getClipToPadding()) {
-      return view.getPaddingLeft();
-    } else {
-      return 0;
-    }
+    return nextHeaderView;
   }
 }
@@ -0,0 +1,275 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.os.Build;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.Display;
+import android.view.View;
+
+import com.timehop.stickyheadersrecyclerview.caching.SectionIndex;
+import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
+import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
+
+/**
+ * Creates and measures the headers of the next sections in the scroll direction ahead of time, so that
+ * the frame that first shows a section doesn't pay for its header. Like RecyclerView's own prefetching,
+ * the work is done after a scroll frame has been drawn and stops when the time left until the next
+ * frame runs out.
+ *
+ * <pre>
+ * new HeaderPrefetcher(headersDecor, 2).attachToRecyclerView(recyclerView);
+ * </pre>
+ *
+ * Finding the next sections is much cheaper with the section index enabled, see
+ * {@link StickyRecyclerHeadersDecoration#setSectionIndexEnabled(boolean)}. Without it, the header ids
+ * of the items ahead are read from the adapter, each of them once while the list keeps scrolling in the
+ * same direction. Prefetched headers are kept by the cache until they are shown, even if it recycles
+ * offscreen headers.
+ */
+public class HeaderPrefetcher extends RecyclerView.OnScrollListener implements Runnable {
+
+  private static final long DEFAULT_FRAME_INTERVAL_NS = 1000000000L / 60;
+
+  private final StickyRecyclerHeadersDecoration mDecoration;
+  private final OrientationProvider mOrientationProvider;
+  private final int mSectionCount;
+
+  /**
+   * Without the section index: the sections found ahead of the laid out items, and the position up to
+   * which header ids have been read in the scroll direction. Kept from frame to frame until the
+   * direction or the data changes.
+   */
+  private final int[] mSectionStarts;
+  private final long[] mSectionHeaderIds;
+  private int mSectionStartCount;
+  private int mScannedPosition = RecyclerView.NO_POSITION;
+  private long mScannedHeaderId;
+  private int mScanDirection;
+
+  private final RecyclerView.AdapterDataObserver mDataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      resetScan();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      resetScan();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      resetScan();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      resetScan();
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      resetScan();
+    }
+  };
+
+  private RecyclerView mRecyclerView;
+  private RecyclerView.Adapter mObservedAdapter;
+  private long mFrameIntervalNs = DEFAULT_FRAME_INTERVAL_NS;
+  private long mFrameStartNs;
+  private int mDirection;
+  private boolean mPosted;
+
+  /**
+   * @param decoration   whose headers should be prefetched
+   * @param sectionCount number of sections ahead of the visible items to prefetch headers for
+   */
+  public HeaderPrefetcher(StickyRecyclerHeadersDecoration decoration, int sectionCount) {
+    this(decoration, new LinearLayoutOrientationProvider(), sectionCount);
+  }
+
+  private HeaderPrefetcher(StickyRecyclerHeadersDecoration decoration, OrientationProvider orientationProvider,
+      int sectionCount) {
+    mDecoration = decoration;
+    mOrientationProvider = orientationProvider;
+    mSectionCount = sectionCount;
+    mSectionStarts = new int[sectionCount];
+    mSectionHeaderIds = new long[sectionCount];
+  }
+
+  /**
+   * Starts prefetching headers while the RecyclerView scrolls, replacing any previous RecyclerView.
+   *
+   * @param recyclerView to prefetch headers for, or null to stop prefetching
+   */
+  public void attachToRecyclerView(RecyclerView recyclerView) {
+    if (mRecyclerView != null) {
+      mRecyclerView.removeOnScrollListener(this);
+      mRecyclerView.removeCallbacks(this);
+      mPosted = false;
+      observeAdapter(null);
+    }
+    mRecyclerView = recyclerView;
+    if (recyclerView != null) {
+      recyclerView.addOnScrollListener(this);
+      mFrameIntervalNs = getFrameIntervalNs(recyclerView);
+    }
+  }
+
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    int delta = mOrientationProvider.getOrientation(recyclerView) == LinearLayoutManager.VERTICAL ? dy : dx;
+    if (delta == 0) {
+      return;
+    }
+    boolean towardsEnd = delta > 0;
+    mDirection = towardsEnd != mOrientationProvider.isReverseLayout(recyclerView) ? 1 : -1;
+    if (!mPosted) {
+      // Runs once the current frame has been drawn
+      mFrameStartNs = System.nanoTime();
+      mPosted = true;
+      recyclerView.post(this);
+    }
+  }
+
+  @Override
+  public void run() {
+    mPosted = false;
+    RecyclerView recyclerView = mRecyclerView;
+    if (recyclerView == null || recyclerView.getAdapter() == null || mDirection == 0) {
+      return;
+    }
+    observeAdapter(recyclerView.getAdapter());
+    long deadlineNs = mFrameStartNs + mFrameIntervalNs;
+    int position = findEdgePosition(recyclerView);
+    if (position == RecyclerView.NO_POSITION) {
+      return;
+    }
+
+    SectionIndex sectionIndex = mDecoration.getSectionIndex();
+    if (sectionIndex.isEnabled()) {
+      prefetchFromIndex(recyclerView, sectionIndex, position, deadlineNs);
+    } else {
+      prefetchFromAdapter(recyclerView, sectionIndex, position, deadlineNs);
+    }
+  }
+
+  private void prefetchFromIndex(RecyclerView recyclerView, SectionIndex sectionIndex, int position,
+      long deadlineNs) {
+    int section = sectionIndex.getSectionForPosition(position);
+    for (int prefetched = 0; prefetched < mSectionCount; prefetched++) {
+      section += mDirection;
+      if (section < 0 || section >= sectionIndex.getSectionCount() || System.nanoTime() >= deadlineNs) {
+        return;
+      }
+      long headerId = sectionIndex.getHeaderIdForSection(section);
+      if (headerId >= 0) {
+        mDecoration.prefetchHeader(recyclerView, sectionIndex.getPositionForSection(section), headerId);
+      }
+    }
+  }
+
+  /**
+   * Reads the header ids of the items ahead of the edge of the laid out items, continuing from where the
+   * previous frame stopped, until enough sections have been found.
+   */
+  private void prefetchFromAdapter(RecyclerView recyclerView, SectionIndex sectionIndex, int edgePosition,
+      long deadlineNs) {
+    if (mScannedPosition == RecyclerView.NO_POSITION || mScanDirection != mDirection
+        || (mScannedPosition - edgePosition) * mDirection < 0) {
+      // The edge moved past what was read, or the other way
+      mScanDirection = mDirection;
+      mScannedPosition = edgePosition;
+      mScannedHeaderId = sectionIndex.getHeaderId(edgePosition);
+      mSectionStartCount = 0;
+    }
+
+    // Sections that are laid out by now are drawn by the decoration
+    int kept = 0;
+    for (int i = 0; i < mSectionStartCount; i++) {
+      if ((mSectionStarts[i] - edgePosition) * mDirection > 0) {
+        mSectionStarts[kept] = mSectionStarts[i];
+        mSectionHeaderIds[kept] = mSectionHeaderIds[i];
+        kept++;
+      }
+    }
+    mSectionStartCount = kept;
+
+    int itemCount = recyclerView.getAdapter().getItemCount();
+    while (mSectionStartCount < mSectionCount) {
+      int position = mScannedPosition + mDirection;
+      if (position < 0 || position >= itemCount || System.nanoTime() >= deadlineNs) {
+        break;
+      }
+      long headerId = sectionIndex.getHeaderId(position);
+      if (headerId != mScannedHeaderId) {
+        mSectionStarts[mSectionStartCount] = position;
+        mSectionHeaderIds[mSectionStartCount] = headerId;
+        mSectionStartCount++;
+      }
+      mScannedPosition = position;
+      mScannedHeaderId = headerId;
+    }
+
+    for (int i = 0; i < mSectionStartCount; i++) {
+      if (System.nanoTime() >= deadlineNs) {
+        return;
+      }
+      if (mSectionHeaderIds[i] >= 0) {
+        mDecoration.prefetchHeader(recyclerView, mSectionStarts[i], mSectionHeaderIds[i]);
+      }
+    }
+  }
+
+  /**
+   * Follows the changes of an adapter, which make the header ids read ahead out of date.
+   *
+   * @param adapter to observe, or null to stop observing
+   */
+  private void observeAdapter(RecyclerView.Adapter adapter) {
+    if (adapter == mObservedAdapter) {
+      return;
+    }
+    if (mObservedAdapter != null) {
+      mObservedAdapter.unregisterAdapterDataObserver(mDataObserver);
+    }
+    mObservedAdapter = adapter;
+    if (adapter != null) {
+      adapter.registerAdapterDataObserver(mDataObserver);
+    }
+    resetScan();
+  }
+
+  private void resetScan() {
+    mScannedPosition = RecyclerView.NO_POSITION;
+    mSectionStartCount = 0;
+  }
+
+  /**
+   * @return the adapter position of the laid out item that is furthest in the scroll direction
+   */
+  private int findEdgePosition(RecyclerView recyclerView) {
+    int edgePosition = RecyclerView.NO_POSITION;
+    for (int i = 0; i < recyclerView.getChildCount(); i++) {
+      int position = recyclerView.getChildAdapterPosition(recyclerView.getChildAt(i));
+      if (position != RecyclerView.NO_POSITION && (edgePosition == RecyclerView.NO_POSITION
+          || (mDirection > 0 ? position > edgePosition : position < edgePosition))) {
+        edgePosition = position;
+      }
+    }
+    return edgePosition;
+  }
+
+  private static long getFrameIntervalNs(View view) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      Display display = view.getDisplay();
+      if (display != null) {
+        float refreshRate = display.getRefreshRate();
+        if (refreshRate >= 30) {
+          return (long) (1000000000L / refreshRate);
+        }
+      }
+    }
+    return DEFAULT_FRAME_INTERVAL_NS;
+  }
+}
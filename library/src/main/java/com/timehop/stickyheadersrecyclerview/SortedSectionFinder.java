@@ -0,0 +1,215 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import java.util.Arrays;
+
+/**
+ * Finds the sections of data sorted by a header key, such as a date or a name prefix, without scanning
+ * every row. Section boundaries are found with a galloping search from a position, followed by a binary
+ * search, and the boundaries found are cached, so the cost is proportional to the number of sections
+ * touched rather than the number of rows.
+ *
+ * An adapter can use the key as its header id and hand range lookups to the finder:
+ *
+ * <pre>
+ * public long getHeaderId(int position) {
+ *   return mSectionFinder.getHeaderId(position);
+ * }
+ *
+ * public void getHeaderIds(int from, int count, long[] out) {
+ *   mSectionFinder.getHeaderIds(from, count, out);
+ * }
+ * </pre>
+ *
+ * Keys must be sorted, ascending or descending, so that equal keys are adjacent. The cached boundaries
+ * must be dropped with {@link #invalidate()} whenever the data changes.
+ *
+ * Keys must not be negative, since a negative header id means that an item has no header. A negative key
+ * is reported with an {@link IllegalStateException} when it is returned as a header id, rather than
+ * silently dropping the header of its section.
+ */
+public class SortedSectionFinder {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final KeyAccessor mKeyAccessor;
+
+  /**
+   * First and last positions of the sections found so far, sorted by position.
+   */
+  private int[] mSectionStarts = new int[INITIAL_CAPACITY];
+  private int[] mSectionEnds = new int[INITIAL_CAPACITY];
+  private int mSectionCount;
+
+  public SortedSectionFinder(KeyAccessor keyAccessor) {
+    mKeyAccessor = keyAccessor;
+  }
+
+  /**
+   * Drops the cached section boundaries.
+   */
+  public void invalidate() {
+    mSectionCount = 0;
+  }
+
+  /**
+   * @param position of the row
+   * @return the key of the row, to be used as its header id
+   * @throws IllegalStateException if the key is negative
+   */
+  public long getHeaderId(int position) {
+    return checkKey(mKeyAccessor.getKey(position), position);
+  }
+
+  /**
+   * Fills an array with the header ids of a range of rows, reading the key once per section in the
+   * range instead of once per row.
+   *
+   * @param from  first position of the range
+   * @param count number of positions in the range
+   * @param out   array to store the header ids in, starting at index 0
+   * @throws IllegalStateException if one of the keys is negative
+   */
+  public void getHeaderIds(int from, int count, long[] out) {
+    int position = from;
+    while (position < from + count) {
+      int section = findSection(position);
+      long key = checkKey(mKeyAccessor.getKey(position), position);
+      int end = Math.min(mSectionEnds[section], from + count - 1);
+      Arrays.fill(out, position - from, end - from + 1, key);
+      position = end + 1;
+    }
+  }
+
+  /**
+   * @param position of a row
+   * @return position of the first row of the section containing it
+   */
+  public int getSectionStart(int position) {
+    int section = findSection(position);
+    return mSectionStarts[section];
+  }
+
+  /**
+   * @param position of a row
+   * @return position of the last row of the section containing it
+   */
+  public int getSectionEnd(int position) {
+    int section = findSection(position);
+    return mSectionEnds[section];
+  }
+
+  /**
+   * Finds the section with a given key with a binary search over all rows.
+   *
+   * @param key of the section
+   * @return position of the first row with the key, or -1 if no row has it
+   */
+  public int findSectionStart(long key) {
+    int count = mKeyAccessor.getCount();
+    if (count == 0) {
+      return -1;
+    }
+    boolean ascending = mKeyAccessor.getKey(0) <= mKeyAccessor.getKey(count - 1);
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      long midKey = mKeyAccessor.getKey(mid);
+      if (ascending ? midKey < key : midKey > key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    if (low == count || mKeyAccessor.getKey(low) != key) {
+      return -1;
+    }
+    int section = findSection(low);
+    return mSectionStarts[section];
+  }
+
+  private static long checkKey(long key, int position) {
+    if (key < 0) {
+      throw new IllegalStateException("Negative key " + key + " at position " + position
+          + ", negative header ids mean no header");
+    }
+    return key;
+  }
+
+  /**
+   * @return index of the cached section containing the position, finding and caching it if needed
+   */
+  private int findSection(int position) {
+    int index = Arrays.binarySearch(mSectionStarts, 0, mSectionCount, position);
+    if (index >= 0) {
+      return index;
+    }
+    int insertionPoint = -index - 1;
+    if (insertionPoint > 0 && mSectionEnds[insertionPoint - 1] >= position) {
+      return insertionPoint - 1;
+    }
+
+    long key = mKeyAccessor.getKey(position);
+    int start = gallop(position, key, -1);
+    int end = gallop(position, key, 1);
+    insertSection(insertionPoint, start, end);
+    return insertionPoint;
+  }
+
+  /**
+   * Finds the last position in a direction that still has the key, by doubling the step until a
+   * different key is found and then binary searching the last step.
+   */
+  private int gallop(int position, long key, int direction) {
+    int count = mKeyAccessor.getCount();
+    int inside = position;
+    int step = 1;
+    int outside = position + direction;
+    while (outside >= 0 && outside < count && mKeyAccessor.getKey(outside) == key) {
+      inside = outside;
+      step *= 2;
+      outside = position + step * direction;
+    }
+    outside = Math.max(-1, Math.min(outside, count));
+
+    // The key changes somewhere between inside (exclusive) and outside (inclusive)
+    while (Math.abs(outside - inside) > 1) {
+      int mid = (inside + outside) / 2;
+      if (mKeyAccessor.getKey(mid) == key) {
+        inside = mid;
+      } else {
+        outside = mid;
+      }
+    }
+    return inside;
+  }
+
+  private void insertSection(int index, int start, int end) {
+    if (mSectionCount == mSectionStarts.length) {
+      mSectionStarts = Arrays.copyOf(mSectionStarts, mSectionCount * 2);
+      mSectionEnds = Arrays.copyOf(mSectionEnds, mSectionCount * 2);
+    }
+    System.arraycopy(mSectionStarts, index, mSectionStarts, index + 1, mSectionCount - index);
+    System.arraycopy(mSectionEnds, index, mSectionEnds, index + 1, mSectionCount - index);
+    mSectionStarts[index] = start;
+    mSectionEnds[index] = end;
+    mSectionCount++;
+  }
+
+  /**
+   * Gives the finder access to the sorted keys.
+   */
+  public interface KeyAccessor {
+
+    /**
+     * @param position of the row
+     * @return the key the rows are sorted and grouped by, zero or greater
+     */
+    long getKey(int position);
+
+    /**
+     * @return number of rows
+     */
+    int getCount();
+  }
+}
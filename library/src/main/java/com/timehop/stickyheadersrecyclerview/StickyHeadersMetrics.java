@@ -0,0 +1,59 @@
+package com.timehop.stickyheadersrecyclerview;
+
+/**
+ * Receives measurements from the sticky header pipeline of a {@link StickyRecyclerHeadersDecoration}.
+ * Install it with {@link StickyRecyclerHeadersDecoration#setMetrics(StickyHeadersMetrics)}. Nothing is
+ * measured while no listener is installed.
+ *
+ * All methods are called on the UI thread.
+ */
+public interface StickyHeadersMetrics {
+
+  /**
+   * Called at the end of every {@code onDrawOver} pass of the decoration.
+   *
+   * @param drawOverNanos    time spent drawing headers during this frame
+   * @param itemOffsetsNanos time spent in {@code getItemOffsets} since the previous frame
+   * @param headersDrawn     number of headers drawn during this frame
+   * @param headerIdLookups  number of calls to {@link StickyRecyclerHeadersAdapter#getHeaderId(int)}
+   *                         made by the decoration since the previous frame
+   */
+  void onFrame(long drawOverNanos, long itemOffsetsNanos, int headersDrawn, int headerIdLookups);
+
+  /**
+   * Called when the decoration starts a {@code getItemOffsets} or {@code onDrawOver} pass. Everything up
+   * to the matching {@link #onPassFinished()} is work done by the decoration itself.
+   */
+  void onPassStarted();
+
+  /**
+   * Called when the decoration finishes the pass started by the last {@link #onPassStarted()}.
+   */
+  void onPassFinished();
+
+  /**
+   * Called when a header was requested and found in the header cache.
+   */
+  void onHeaderCacheHit();
+
+  /**
+   * Called when a header was requested and had to be bound, and possibly created.
+   */
+  void onHeaderCacheMiss();
+
+  /**
+   * Called when a new header ViewHolder was created by the adapter.
+   */
+  void onHeaderCreated();
+
+  /**
+   * Called when a header ViewHolder was bound by the adapter.
+   */
+  void onHeaderBound();
+
+  /**
+   * Called when a header was measured and laid out, either after being bound or because the size of
+   * the parent changed.
+   */
+  void onHeaderMeasured();
+}
@@ -0,0 +1,322 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.graphics.Rect;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
+import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
+import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
+
+/**
+ * Shows the sticky header as a real view in an overlay container, instead of drawing it onto the canvas
+ * of the RecyclerView. While scrolling only the translation of the header view changes, which the
+ * framework can apply without redrawing the header, and the header gets the usual benefits of a view in
+ * the hierarchy, such as hardware layers, property animations and its own invalidation.
+ *
+ * The container must have the same position and size as the RecyclerView, for example a FrameLayout
+ * stacked on top of it. Headers of the sections that scroll with the list are still drawn by the
+ * decoration.
+ *
+ * <pre>
+ * StickyHeadersOverlay overlay = new StickyHeadersOverlay(headersDecor, adapter, overlayContainer);
+ * overlay.attachToRecyclerView(recyclerView);
+ * </pre>
+ *
+ * The overlay keeps two header views of its own, on top of the header cached by the decoration: the
+ * current sticky header and the header of the next section. The next header is bound and sized while its
+ * section scrolls in, hidden, so that it is ready when it takes over and the frame in which it becomes
+ * sticky only swaps the two views. Without the section index, the next section is known once its header
+ * is laid out; with it, as soon as a header is sticky. Scrolling back to the previous section binds the
+ * spare view again. The views are given the size of the cached header, and clipped to the area in which
+ * the RecyclerView shows its items. Headers invalidated through the decoration are bound again.
+ */
+public class StickyHeadersOverlay extends RecyclerView.OnScrollListener implements View.OnLayoutChangeListener {
+
+  private final StickyRecyclerHeadersDecoration mDecoration;
+  private final StickyRecyclerHeadersAdapter mAdapter;
+  private final StickyRecyclerHeadersContentAdapter mContentAdapter;
+  private final ViewGroup mContainer;
+  private final OrientationProvider mOrientationProvider = new LinearLayoutOrientationProvider();
+  private final LayoutSnapshot mLayoutSnapshot = new LayoutSnapshot();
+  private final Rect mStickyHeaderBounds = new Rect();
+
+  /**
+   * Holds the header views inside the container, and clips them to the list area with its padding.
+   */
+  private final FrameLayout mClipFrame;
+
+  private final Runnable mUpdateRunnable = new Runnable() {
+    @Override
+    public void run() {
+      update();
+    }
+  };
+
+  private OverlayHeader mCurrent = new OverlayHeader();
+  private OverlayHeader mNext = new OverlayHeader();
+  private RecyclerView mRecyclerView;
+
+  /**
+   * @param decoration whose sticky header to show
+   * @param adapter    used to create and bind the header views of the overlay
+   * @param container  to add the header views to, covering the RecyclerView
+   */
+  public StickyHeadersOverlay(StickyRecyclerHeadersDecoration decoration, StickyRecyclerHeadersAdapter adapter,
+      ViewGroup container) {
+    mDecoration = decoration;
+    mAdapter = adapter;
+    mContentAdapter = adapter instanceof StickyRecyclerHeadersContentAdapter
+        ? (StickyRecyclerHeadersContentAdapter) adapter : null;
+    mContainer = container;
+    mClipFrame = new FrameLayout(container.getContext());
+    mClipFrame.setClipToPadding(true);
+  }
+
+  /**
+   * Starts showing the sticky header of a RecyclerView, replacing any previous RecyclerView. The header
+   * views of the previous RecyclerView are removed from the container.
+   *
+   * @param recyclerView to follow, or null to hand the sticky header back to the decoration
+   */
+  public void attachToRecyclerView(RecyclerView recyclerView) {
+    if (mRecyclerView != null) {
+      mRecyclerView.removeOnScrollListener(this);
+      mRecyclerView.removeOnLayoutChangeListener(this);
+      mContainer.removeCallbacks(mUpdateRunnable);
+      mDecoration.setOverlay(null);
+      mDecoration.setDrawStickyHeader(true);
+      mClipFrame.removeAllViews();
+      mContainer.removeView(mClipFrame);
+      mCurrent = new OverlayHeader();
+      mNext = new OverlayHeader();
+      mRecyclerView.invalidate();
+    }
+    mRecyclerView = recyclerView;
+    if (recyclerView != null) {
+      mContainer.addView(mClipFrame, new ViewGroup.LayoutParams(
+          ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+      mDecoration.setOverlay(this);
+      mDecoration.setDrawStickyHeader(false);
+      recyclerView.addOnScrollListener(this);
+      recyclerView.addOnLayoutChangeListener(this);
+      recyclerView.invalidate();
+      update();
+    }
+  }
+
+  /**
+   * Binds the header views again before they are next shown. Called by the decoration when all of its
+   * headers are invalidated. With a {@link StickyRecyclerHeadersContentAdapter}, headers whose content key
+   * didn't change are kept as they are.
+   */
+  public void invalidate() {
+    mCurrent.mStale = true;
+    mNext.mStale = true;
+    scheduleUpdate();
+  }
+
+  /**
+   * Binds the header view of a header id again before it is next shown. Called by the decoration when
+   * the header is invalidated.
+   *
+   * @param headerId of the invalidated header
+   */
+  public void invalidateHeader(long headerId) {
+    if (mCurrent.invalidate(headerId) | mNext.invalidate(headerId)) {
+      scheduleUpdate();
+    }
+  }
+
+  /**
+   * Binds the header view of a header id again, if it is being shown. Called by the decoration when the
+   * content of the header changed. The hidden view of the next header is bound again on the next update.
+   *
+   * @param headerId of the changed header
+   */
+  public void notifyHeaderChanged(long headerId) {
+    mNext.invalidate(headerId);
+    if (mCurrent.invalidate(headerId)) {
+      // The data set didn't change, so the sticky position is current
+      update();
+    }
+  }
+
+  /**
+   * Updates the overlay once the adapter change being dispatched has been applied, since the
+   * RecyclerView may not have been notified of it yet.
+   */
+  private void scheduleUpdate() {
+    if (mRecyclerView != null) {
+      mContainer.removeCallbacks(mUpdateRunnable);
+      mContainer.post(mUpdateRunnable);
+    }
+  }
+
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    update();
+  }
+
+  @Override
+  public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop,
+      int oldRight, int oldBottom) {
+    update();
+  }
+
+  /**
+   * Moves the sticky header view to the current sticky header location, binding it first if the sticky
+   * section changed or its header was invalidated, and then prepares the header of the next section.
+   */
+  public void update() {
+    if (mRecyclerView == null) {
+      return;
+    }
+    int position = mDecoration.findStickyHeaderPosition(mRecyclerView, mStickyHeaderBounds);
+    if (position == RecyclerView.NO_POSITION) {
+      hide(mCurrent);
+      return;
+    }
+    updateClipPadding();
+
+    long headerId = mAdapter.getHeaderId(position);
+    if (headerId != mCurrent.mHeaderId) {
+      // Usually the next header, prepared while its section scrolled in
+      OverlayHeader header = mCurrent;
+      mCurrent = mNext;
+      mNext = header;
+      hide(mNext);
+    }
+    if (headerId != mCurrent.mHeaderId || needsBind(mCurrent, position)) {
+      bindHeader(mCurrent, position, headerId);
+    }
+
+    View header = mCurrent.mViewHolder.itemView;
+    setSize(header, mStickyHeaderBounds.width(), mStickyHeaderBounds.height());
+    header.setTranslationX(mStickyHeaderBounds.left - header.getLeft());
+    header.setTranslationY(mStickyHeaderBounds.top - header.getTop());
+    header.setVisibility(View.VISIBLE);
+
+    prepareNextHeader(mDecoration.getNextHeaderPosition());
+  }
+
+  /**
+   * Binds the spare view to the header of the next section and gives it the size of the header cached
+   * by the decoration, so that it is laid out before it is shown. It stays hidden until it is sticky.
+   *
+   * @param position of an item of the next section, or {@link RecyclerView#NO_POSITION} if it isn't known
+   */
+  private void prepareNextHeader(int position) {
+    if (position == RecyclerView.NO_POSITION) {
+      return;
+    }
+    long headerId = mAdapter.getHeaderId(position);
+    if (headerId < 0) {
+      return;
+    }
+    if (headerId != mNext.mHeaderId || needsBind(mNext, position)) {
+      bindHeader(mNext, position, headerId);
+      hide(mNext);
+    }
+    View cachedHeader = mDecoration.getHeaderView(mRecyclerView, position);
+    setSize(mNext.mViewHolder.itemView, cachedHeader.getWidth(), cachedHeader.getHeight());
+  }
+
+  /**
+   * Pads the clip frame to the area in which the RecyclerView shows its items. The clip frame has the
+   * size of the container, so its coordinates are those of the RecyclerView.
+   */
+  private void updateClipPadding() {
+    LayoutSnapshot layout = mLayoutSnapshot;
+    layout.capture(mRecyclerView, mOrientationProvider);
+    int left = layout.getListLeft();
+    int top = layout.getListTop();
+    int right = layout.getWidth() - layout.getListRight();
+    int bottom = layout.getHeight() - layout.getListBottom();
+    if (mClipFrame.getPaddingLeft() != left || mClipFrame.getPaddingTop() != top
+        || mClipFrame.getPaddingRight() != right || mClipFrame.getPaddingBottom() != bottom) {
+      mClipFrame.setPadding(left, top, right, bottom);
+    }
+  }
+
+  private boolean needsBind(OverlayHeader header, int position) {
+    if (header.mDirty) {
+      return true;
+    }
+    if (!header.mStale) {
+      return false;
+    }
+    if (mContentAdapter != null && mContentAdapter.getHeaderContentKey(position) == header.mContentKey) {
+      header.mStale = false;
+      return false;
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void bindHeader(OverlayHeader overlayHeader, int position, long headerId) {
+    if (overlayHeader.mViewHolder == null) {
+      overlayHeader.mViewHolder = mAdapter.onCreateHeaderViewHolder(mClipFrame);
+      View header = overlayHeader.mViewHolder.itemView;
+      // Sized to the header measured by the decoration's cache before it is first laid out
+      header.setLayoutParams(new FrameLayout.LayoutParams(0, 0));
+      // The translation depends on where the clip frame lays the header out
+      header.addOnLayoutChangeListener(this);
+      mClipFrame.addView(header);
+    }
+    mAdapter.onBindHeaderViewHolder(overlayHeader.mViewHolder, position);
+    overlayHeader.mHeaderId = headerId;
+    overlayHeader.mContentKey = mContentAdapter != null ? mContentAdapter.getHeaderContentKey(position) : 0;
+    overlayHeader.mStale = false;
+    overlayHeader.mDirty = false;
+  }
+
+  /**
+   * Gives a header view the size of the header measured by the cache of the decoration, which was
+   * measured against the size and padding of the RecyclerView rather than of the container.
+   */
+  private static void setSize(View header, int width, int height) {
+    ViewGroup.LayoutParams layoutParams = header.getLayoutParams();
+    if (layoutParams.width != width || layoutParams.height != height) {
+      layoutParams.width = width;
+      layoutParams.height = height;
+      header.setLayoutParams(layoutParams);
+    }
+  }
+
+  private static void hide(OverlayHeader header) {
+    if (header.mViewHolder != null) {
+      header.mViewHolder.itemView.setVisibility(View.INVISIBLE);
+    }
+  }
+
+  /**
+   * A header view of the overlay, and the header it is bound to.
+   */
+  private static class OverlayHeader {
+    RecyclerView.ViewHolder mViewHolder;
+    long mHeaderId = -1;
+    long mContentKey;
+    /**
+     * True if the headers were invalidated, so the view has to be checked against its content key
+     */
+    boolean mStale;
+    /**
+     * True if the header was invalidated or changed, so the view has to be bound again
+     */
+    boolean mDirty;
+
+    /**
+     * @return true if the view is bound to the header id and now has to be bound again
+     */
+    boolean invalidate(long headerId) {
+      if (mViewHolder == null || mHeaderId != headerId) {
+        return false;
+      }
+      mDirty = true;
+      return true;
+    }
+  }
+}
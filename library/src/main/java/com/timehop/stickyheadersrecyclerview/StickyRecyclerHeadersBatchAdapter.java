@@ -0,0 +1,20 @@
+package com.timehop.stickyheadersrecyclerview;
+
+/**
+ * An optional extension of {@link StickyRecyclerHeadersAdapter} for adapters that can read the header ids
+ * of a range of positions more cheaply than one at a time, for example when they are backed by a cursor
+ * or by arrays. When the adapter passed to {@link StickyRecyclerHeadersDecoration} implements it, the
+ * decoration fetches the header ids of the visible items and of the section index in batches.
+ */
+public interface StickyRecyclerHeadersBatchAdapter {
+
+  /**
+   * Gets the header ids of a range of positions. Must return the same values as
+   * {@link StickyRecyclerHeadersAdapter#getHeaderId(int)} would for each position.
+   *
+   * @param from  first position of the range
+   * @param count number of positions in the range
+   * @param out   array to store the header ids in, starting at index 0. It holds at least count elements.
+   */
+  void getHeaderIds(int from, int count, long[] out);
+}
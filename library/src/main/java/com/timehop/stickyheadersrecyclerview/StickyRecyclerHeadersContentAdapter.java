@@ -0,0 +1,22 @@
+package com.timehop.stickyheadersrecyclerview;
+
+/**
+ * An optional extension of {@link StickyRecyclerHeadersAdapter} for adapters that can tell whether the
+ * content of a header changed. When the adapter passed to {@link StickyRecyclerHeadersDecoration}
+ * implements it, {@link StickyRecyclerHeadersDecoration#invalidateHeaders()} keeps the cached headers and
+ * checks them against their content key the next time they are requested. Headers whose key is unchanged
+ * are reused as they are, the others are rebound without being inflated again, and headers that are not
+ * requested during the next frame are dropped.
+ */
+public interface StickyRecyclerHeadersContentAdapter {
+
+  /**
+   * Gets a key for everything {@link StickyRecyclerHeadersAdapter#onBindHeaderViewHolder} shows in the
+   * header of a position, such as a hash of its title and counters. Two positions with the same header id
+   * and content key must bind to identical headers.
+   *
+   * @param position the position of the item to get the header content key of
+   * @return the content key
+   */
+  long getHeaderContentKey(int position);
+}
@@ -1,29 +1,39 @@
 package com.timehop.stickyheadersrecyclerview;
 
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.support.v7.widget.LinearLayoutManager;
+import android.os.Build;
+import android.os.Trace;
 import android.support.v7.widget.RecyclerView;
-import android.util.SparseArray;
 import android.view.View;
 
-import com.timehop.stickyheadersrecyclerview.caching.HeaderProvider;
 import com.timehop.stickyheadersrecyclerview.caching.HeaderViewCache;
+import com.timehop.stickyheadersrecyclerview.caching.HeaderViewPool;
+import com.timehop.stickyheadersrecyclerview.caching.SectionIndex;
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.calculation.HeaderRectTable;
 import com.timehop.stickyheadersrecyclerview.rendering.HeaderRenderer;
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
 import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
 public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration {
 
+  private static final int INVALIDATION_BATCH_SIZE = 64;
+
   private final StickyRecyclerHeadersAdapter mAdapter;
+  private final SectionIndex mSectionIndex;
   private final ItemVisibilityAdapter mVisibilityAdapter;
-  private final SparseArray<Rect> mHeaderRects = new SparseArray<>();
-  private final HeaderProvider mHeaderProvider;
+  private final HeaderRectTable mHeaderRects = new HeaderRectTable();
+  private final HeaderViewCache mHeaderProvider;
   private final OrientationProvider mOrientationProvider;
   private final HeaderPositionCalculator mHeaderPositionCalculator;
   private final HeaderRenderer mRenderer;
-  private final DimensionCalculator mDimensionCalculator;
 
   /**
    * The following field is used as a buffer for internal calculations. Its sole purpose is to avoid
@@ -31,6 +41,48 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
    */
   private final Rect mTempRect = new Rect();
 
+  /**
+   * Bounds of the sticky header drawn during the current frame, used to skip headers hidden under it.
+   */
+  private final Rect mStickyHeaderRect = new Rect();
+  private final Rect mHeaderBounds = new Rect();
+
+  /**
+   * Layout properties of the RecyclerView, captured once per pass: by the first getItemOffsets of a
+   * layout pass, and at the start of onDrawOver. Shared with the header cache, and invalidated once the
+   * frame has been drawn.
+   */
+  private final LayoutSnapshot mLayoutSnapshot = new LayoutSnapshot();
+
+  /**
+   * Per child of the current pass: its adapter position, and whether it carries the sticky header or
+   * starts a section. Read once per child, and reused to find the header that pushes the sticky one.
+   */
+  private int[] mChildPositions = new int[0];
+  private boolean[] mChildHasStickyHeader = new boolean[0];
+  private boolean[] mChildHasNewHeader = new boolean[0];
+
+  private StickyHeadersMetrics mMetrics;
+  private boolean mTraceEnabled;
+  private boolean mDrawStickyHeader = true;
+
+  /**
+   * Header id of the sticky header drawn during the last frame, or -1
+   */
+  private long mStickyHeaderId = -1;
+
+  /**
+   * Item carrying the header that follows the sticky one, found by findStickyHeaderPosition, or NO_POSITION
+   */
+  private int mNextHeaderPosition = RecyclerView.NO_POSITION;
+  private int mModerateTrimLevel = ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+  private int mCriticalTrimLevel = ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+  private ComponentCallbacks mComponentCallbacks;
+  private long mItemOffsetsNanos;
+  private int mLastAdapterLookupCount;
+  private long[] mInvalidationBatch;
+  private StickyHeadersOverlay mOverlay;
+
   // TODO: Consider passing in orientation to simplify orientation accounting within calculation
   public StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter) {
     this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator(), null);
@@ -42,101 +94,252 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
 
   private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, OrientationProvider orientationProvider,
       DimensionCalculator dimensionCalculator, ItemVisibilityAdapter visibilityAdapter) {
-    this(adapter, orientationProvider, dimensionCalculator, new HeaderRenderer(orientationProvider),
-        new HeaderViewCache(adapter, orientationProvider), visibilityAdapter);
+    this(adapter, new SectionIndex(adapter), orientationProvider, dimensionCalculator, visibilityAdapter);
   }
 
-  private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, OrientationProvider orientationProvider,
-      DimensionCalculator dimensionCalculator, HeaderRenderer headerRenderer, HeaderProvider headerProvider, ItemVisibilityAdapter visibilityAdapter) {
-    this(adapter, headerRenderer, orientationProvider, dimensionCalculator, headerProvider,
-        new HeaderPositionCalculator(adapter, headerProvider, orientationProvider,
+  private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator,
+      ItemVisibilityAdapter visibilityAdapter) {
+    this(adapter, sectionIndex, orientationProvider, dimensionCalculator, new HeaderRenderer(orientationProvider),
+        new HeaderViewCache(adapter, sectionIndex, orientationProvider, dimensionCalculator), visibilityAdapter);
+  }
+
+  private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator, HeaderRenderer headerRenderer,
+      HeaderViewCache headerProvider, ItemVisibilityAdapter visibilityAdapter) {
+    this(adapter, sectionIndex, headerRenderer, orientationProvider, headerProvider,
+        new HeaderPositionCalculator(adapter, sectionIndex, headerProvider, orientationProvider,
             dimensionCalculator), visibilityAdapter);
   }
 
-  private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, HeaderRenderer headerRenderer,
-      OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator, HeaderProvider headerProvider,
-      HeaderPositionCalculator headerPositionCalculator, ItemVisibilityAdapter visibilityAdapter) {
+  private StickyRecyclerHeadersDecoration(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      HeaderRenderer headerRenderer, OrientationProvider orientationProvider, HeaderViewCache headerProvider,
+      HeaderPositionCalculator headerPositionCalculator,
+      ItemVisibilityAdapter visibilityAdapter) {
     mAdapter = adapter;
+    mSectionIndex = sectionIndex;
     mHeaderProvider = headerProvider;
     mOrientationProvider = orientationProvider;
     mRenderer = headerRenderer;
-    mDimensionCalculator = dimensionCalculator;
     mHeaderPositionCalculator = headerPositionCalculator;
     mVisibilityAdapter = visibilityAdapter;
+    mHeaderProvider.setLayoutSnapshot(mLayoutSnapshot);
+    mHeaderProvider.setOnHeaderBoundListener(new HeaderViewCache.OnHeaderBoundListener() {
+      @Override
+      public void onHeaderBound(View header) {
+        mRenderer.invalidateSnapshot(header);
+      }
+    });
   }
 
   @Override
   public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
     super.getItemOffsets(outRect, view, parent, state);
-    int itemPosition = parent.getChildAdapterPosition(view);
-    if (itemPosition == RecyclerView.NO_POSITION) {
-        return;
+    if (mMetrics == null && !mTraceEnabled) {
+      computeItemOffsets(outRect, view, parent);
+      return;
     }
-    if (mHeaderPositionCalculator.hasNewHeader(itemPosition, mOrientationProvider.isReverseLayout(parent))) {
-      View header = getHeaderView(parent, itemPosition);
-      setItemOffsetsForHeader(outRect, header, mOrientationProvider.getOrientation(parent));
+
+    beginTraceSection("StickyHeaders:getItemOffsets");
+    if (mMetrics != null) {
+      mMetrics.onPassStarted();
     }
+    long start = System.nanoTime();
+    computeItemOffsets(outRect, view, parent);
+    mItemOffsetsNanos += System.nanoTime() - start;
+    if (mMetrics != null) {
+      mMetrics.onPassFinished();
+    }
+    endTraceSection();
   }
 
-  /**
-   * Sets the offsets for the first item in a section to make room for the header view
-   *
-   * @param itemOffsets rectangle to define offsets for the item
-   * @param header      view used to calculate offset for the item
-   * @param orientation used to calculate offset for the item
-   */
-  private void setItemOffsetsForHeader(Rect itemOffsets, View header, int orientation) {
-    mDimensionCalculator.initMargins(mTempRect, header);
-    if (orientation == LinearLayoutManager.VERTICAL) {
-      itemOffsets.top = header.getHeight() + mTempRect.top + mTempRect.bottom;
-    } else {
-      itemOffsets.left = header.getWidth() + mTempRect.left + mTempRect.right;
+  private void computeItemOffsets(Rect outRect, View view, RecyclerView parent) {
+    int itemPosition = parent.getChildAdapterPosition(view);
+    if (itemPosition == RecyclerView.NO_POSITION) {
+        return;
+    }
+    mLayoutSnapshot.captureIfNeeded(parent, mOrientationProvider);
+    if (mHeaderPositionCalculator.hasNewHeader(itemPosition, mLayoutSnapshot.isReverseLayout())) {
+      // Cached with the header, so only computed again when the header is rebound or re-measured
+      int itemOffset = mHeaderProvider.getItemOffset(parent, itemPosition);
+      if (mLayoutSnapshot.isVertical()) {
+        outRect.top = itemOffset;
+      } else {
+        outRect.left = itemOffset;
+      }
     }
   }
 
   @Override
   public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
     super.onDrawOver(canvas, parent, state);
+    if (mMetrics == null && !mTraceEnabled) {
+      drawHeaders(canvas, parent);
+      return;
+    }
+
+    beginTraceSection("StickyHeaders:onDrawOver");
+    if (mMetrics != null) {
+      mMetrics.onPassStarted();
+    }
+    long start = System.nanoTime();
+    drawHeaders(canvas, parent);
+    long drawOverNanos = System.nanoTime() - start;
+    if (mMetrics != null) {
+      mMetrics.onPassFinished();
+    }
+    endTraceSection();
+
+    if (mMetrics != null) {
+      int headerIdLookups = mSectionIndex.getAdapterLookupCount();
+      mMetrics.onFrame(drawOverNanos, mItemOffsetsNanos, mHeaderRects.size(),
+          headerIdLookups - mLastAdapterLookupCount);
+      mLastAdapterLookupCount = headerIdLookups;
+    }
+    mItemOffsetsNanos = 0;
+  }
+
+  private void drawHeaders(Canvas canvas, RecyclerView parent) {
+    mHeaderProvider.startFrame();
+    mRenderer.startFrame();
+    mHeaderRects.clear();
+    mStickyHeaderId = -1;
 
     final int childCount = parent.getChildCount();
-    if (childCount <= 0 || mAdapter.getItemCount() <= 0) {
-      return;
+    if (childCount > 0 && mAdapter.getItemCount() > 0) {
+      mLayoutSnapshot.capture(parent, mOrientationProvider);
+      if (!mSectionIndex.isEnabled() && mSectionIndex.isBatchAdapter()) {
+        loadHeaderIdWindow(parent, childCount);
+        drawHeaders(canvas, parent, childCount);
+        mSectionIndex.clearWindow();
+      } else {
+        drawHeaders(canvas, parent, childCount);
+      }
+    }
+    // The next layout pass captures the layout again
+    mLayoutSnapshot.invalidate();
+  }
+
+  /**
+   * Reads the header ids of the laid out items, and of the items next to them, from the adapter in
+   * one batch.
+   */
+  private void loadHeaderIdWindow(RecyclerView parent, int childCount) {
+    int first = Integer.MAX_VALUE;
+    int last = -1;
+    for (int i = 0; i < childCount; i++) {
+      int position = parent.getChildAdapterPosition(parent.getChildAt(i));
+      if (position != RecyclerView.NO_POSITION) {
+        first = Math.min(first, position);
+        last = Math.max(last, position);
+      }
+    }
+    if (last >= 0) {
+      mSectionIndex.loadWindow(first - 1, last - first + 3);
+    }
+  }
+
+  private void drawHeaders(Canvas canvas, RecyclerView parent, int childCount) {
+    boolean isReverseLayout = mLayoutSnapshot.isReverseLayout();
+    readChildren(parent, childCount);
+    boolean hasStickyRect = false;
+    for (int i = 0; i < childCount; i++) {
+      boolean hasStickyHeader = mChildHasStickyHeader[i];
+      if (!hasStickyHeader && !mChildHasNewHeader[i]) {
+        continue;
+      }
+      View itemView = parent.getChildAt(i);
+      int position = mChildPositions[i];
+      View header = mHeaderProvider.getHeader(parent, position);
+      if (!hasStickyHeader && !mHeaderPositionCalculator.isHeaderInViewport(mLayoutSnapshot, header, itemView)) {
+        continue;
+      }
+      Rect headerOffset = mHeaderBounds;
+      View nextHeaderView = hasStickyHeader
+          ? findNextHeaderView(parent, childCount, position, isReverseLayout) : null;
+      mHeaderPositionCalculator.initHeaderBounds(headerOffset, parent, mLayoutSnapshot, header, itemView,
+          hasStickyHeader, nextHeaderView);
+      if (hasStickyHeader) {
+        mStickyHeaderId = mSectionIndex.getHeaderId(position);
+        mStickyHeaderRect.set(headerOffset);
+        hasStickyRect = true;
+      } else if (hasStickyRect && mStickyHeaderRect.contains(headerOffset)) {
+        // Fully covered by the sticky header
+        continue;
+      }
+      if (!hasStickyHeader || mDrawStickyHeader) {
+        mRenderer.drawHeader(mLayoutSnapshot, canvas, header, headerOffset);
+      }
+      mHeaderRects.add(position, headerOffset);
     }
+  }
 
+  /**
+   * Reads the adapter position of every child, and whether it carries the sticky header or starts a
+   * section, from the layout captured in {@link #mLayoutSnapshot}.
+   */
+  private void readChildren(RecyclerView parent, int childCount) {
+    if (mChildPositions.length < childCount) {
+      mChildPositions = new int[childCount];
+      mChildHasStickyHeader = new boolean[childCount];
+      mChildHasNewHeader = new boolean[childCount];
+    }
+    int orientation = mLayoutSnapshot.getOrientation();
+    boolean isReverseLayout = mLayoutSnapshot.isReverseLayout();
     for (int i = 0; i < childCount; i++) {
       View itemView = parent.getChildAt(i);
       int position = parent.getChildAdapterPosition(itemView);
-      if (position == RecyclerView.NO_POSITION) {
-          continue;
-      }
-
-      boolean hasStickyHeader = mHeaderPositionCalculator.hasStickyHeader(itemView, mOrientationProvider.getOrientation(parent), position);
-      if (hasStickyHeader || mHeaderPositionCalculator.hasNewHeader(position, mOrientationProvider.isReverseLayout(parent))) {
-        View header = mHeaderProvider.getHeader(parent, position);
-        //re-use existing Rect, if any.
-        Rect headerOffset = mHeaderRects.get(position);
-        if (headerOffset == null) {
-          headerOffset = new Rect();
-          mHeaderRects.put(position, headerOffset);
-        }
-        mHeaderPositionCalculator.initHeaderBounds(headerOffset, parent, header, itemView, hasStickyHeader);
-        mRenderer.drawHeader(parent, canvas, header, headerOffset);
+      boolean hasStickyHeader = position != RecyclerView.NO_POSITION
+          && mHeaderPositionCalculator.hasStickyHeader(itemView, orientation, position);
+      mChildPositions[i] = position;
+      mChildHasStickyHeader[i] = hasStickyHeader;
+      mChildHasNewHeader[i] = position != RecyclerView.NO_POSITION && !hasStickyHeader
+          && mHeaderPositionCalculator.hasNewHeader(position, isReverseLayout);
+    }
+  }
+
+  /**
+   * Finds the child closest to a position, in layout order, that starts the next section, using what
+   * {@link #readChildren} found.
+   *
+   * @return the child, or null if none of the children starts a section after the position
+   */
+  private View findNextHeaderView(RecyclerView parent, int childCount, int position, boolean isReverseLayout) {
+    int next = findNextHeaderChild(childCount, position, isReverseLayout);
+    return next >= 0 ? parent.getChildAt(next) : null;
+  }
+
+  /**
+   * @return index of the child found by {@link #findNextHeaderView}, or -1 if there is none
+   */
+  private int findNextHeaderChild(int childCount, int position, boolean isReverseLayout) {
+    int next = -1;
+    for (int i = 0; i < childCount; i++) {
+      if (!mChildHasNewHeader[i]) {
+        continue;
+      }
+      int childPosition = mChildPositions[i];
+      if (isReverseLayout
+          ? childPosition < position && (next < 0 || childPosition > mChildPositions[next])
+          : childPosition > position && (next < 0 || childPosition < mChildPositions[next])) {
+        next = i;
       }
     }
+    return next;
   }
 
   /**
-   * Gets the position of the header under the specified (x, y) coordinates.
+   * Gets the position of the header under the specified (x, y) coordinates. Only the headers drawn
+   * during the last frame are considered, starting with the one drawn last since it is on top.
    *
    * @param x x-coordinate
    * @param y y-coordinate
    * @return position of header, or -1 if not found
    */
   public int findHeaderPositionUnder(int x, int y) {
-    for (int i = 0; i < mHeaderRects.size(); i++) {
-      Rect rect = mHeaderRects.get(mHeaderRects.keyAt(i));
-      if (rect.contains(x, y)) {
-        int position = mHeaderRects.keyAt(i);
+    for (int i = mHeaderRects.size() - 1; i >= 0; i--) {
+      if (mHeaderRects.contains(i, x, y)) {
+        int position = mHeaderRects.getPosition(i);
         if (mVisibilityAdapter == null || mVisibilityAdapter.isPositionVisible(position)) {
           return position;
         }
@@ -157,12 +360,404 @@ public class StickyRecyclerHeadersDecoration extends RecyclerView.ItemDecoration
     return mHeaderProvider.getHeader(parent, position);
   }
 
+  /**
+   * Creates the header for a position ahead of time, and keeps it until it is shown. Used by
+   * {@link HeaderPrefetcher}.
+   *
+   * @param parent   the recyclerview
+   * @param position of the first item of the section
+   * @param headerId of the item
+   */
+  void prefetchHeader(RecyclerView parent, int position, long headerId) {
+    mHeaderProvider.prefetchHeader(parent, position, headerId);
+  }
+
+  /**
+   * Finds the item whose header is currently sticky, and where the sticky header is, including the
+   * push-off by the next header.
+   *
+   * @param parent the recyclerview
+   * @param bounds rect to populate with the bounds of the sticky header
+   * @return position of the item, or {@link RecyclerView#NO_POSITION} if no header is sticky
+   */
+  public int findStickyHeaderPosition(RecyclerView parent, Rect bounds) {
+    if (mAdapter.getItemCount() <= 0) {
+      return RecyclerView.NO_POSITION;
+    }
+    // Usually called between passes, in which case the layout is only kept for this call
+    boolean inPass = mLayoutSnapshot.isCaptured(parent);
+    mLayoutSnapshot.captureIfNeeded(parent, mOrientationProvider);
+    int childCount = parent.getChildCount();
+    readChildren(parent, childCount);
+    boolean isReverseLayout = mLayoutSnapshot.isReverseLayout();
+    int stickyPosition = RecyclerView.NO_POSITION;
+    mNextHeaderPosition = RecyclerView.NO_POSITION;
+    for (int i = 0; i < childCount; i++) {
+      if (mChildHasStickyHeader[i]) {
+        stickyPosition = mChildPositions[i];
+        View header = mHeaderProvider.getHeader(parent, stickyPosition);
+        int next = findNextHeaderChild(childCount, stickyPosition, isReverseLayout);
+        View nextHeaderView = next >= 0 ? parent.getChildAt(next) : null;
+        mHeaderPositionCalculator.initHeaderBounds(bounds, parent, mLayoutSnapshot, header, parent.getChildAt(i),
+            true, nextHeaderView);
+        mNextHeaderPosition = next >= 0
+            ? mChildPositions[next] : findNextSectionPosition(stickyPosition, isReverseLayout);
+        break;
+      }
+    }
+    if (!inPass) {
+      mLayoutSnapshot.invalidate();
+    }
+    return stickyPosition;
+  }
+
+  /**
+   * @return position of an item of the section whose header follows the sticky one in layout order, as
+   * found by the last call to {@link #findStickyHeaderPosition(RecyclerView, Rect)}, or
+   * {@link RecyclerView#NO_POSITION} if that section isn't laid out and the section index is disabled
+   */
+  int getNextHeaderPosition() {
+    return mNextHeaderPosition;
+  }
+
+  /**
+   * @return the item carrying the header of the section after the one of a position in layout order,
+   * read from the section index, or {@link RecyclerView#NO_POSITION} if the index is disabled or there is
+   * no such section
+   */
+  private int findNextSectionPosition(int position, boolean isReverseLayout) {
+    if (!mSectionIndex.isEnabled()) {
+      return RecyclerView.NO_POSITION;
+    }
+    int section = mSectionIndex.getSectionForPosition(position);
+    if (section < 0) {
+      return RecyclerView.NO_POSITION;
+    }
+    if (isReverseLayout) {
+      return section > 0 ? mSectionIndex.getLastPositionForSection(section - 1) : RecyclerView.NO_POSITION;
+    }
+    return section + 1 < mSectionIndex.getSectionCount()
+        ? mSectionIndex.getPositionForSection(section + 1) : RecyclerView.NO_POSITION;
+  }
+
+  /**
+   * Sets whether the sticky header is drawn onto the canvas of the RecyclerView. It is turned off by
+   * {@link StickyHeadersOverlay}, which shows the sticky header as a view of its own. Its bounds are still
+   * tracked for {@link #findHeaderPositionUnder(int, int)}.
+   *
+   * @param drawStickyHeader false to leave the sticky header out of {@code onDrawOver}
+   */
+  public void setDrawStickyHeader(boolean drawStickyHeader) {
+    mDrawStickyHeader = drawStickyHeader;
+  }
+
+  /**
+   * Sets the overlay showing the sticky header, which has to be told when headers are invalidated.
+   */
+  void setOverlay(StickyHeadersOverlay overlay) {
+    mOverlay = overlay;
+  }
+
+  /**
+   * Installs a listener for timings and counters of the header pipeline, such as the time spent in
+   * {@code onDrawOver} and {@code getItemOffsets}, header cache hits and misses, and adapter lookups.
+   *
+   * @param metrics to install, or null to stop measuring
+   */
+  public void setMetrics(StickyHeadersMetrics metrics) {
+    mMetrics = metrics;
+    mHeaderProvider.setMetrics(metrics);
+    mItemOffsetsNanos = 0;
+    mLastAdapterLookupCount = mSectionIndex.getAdapterLookupCount();
+  }
+
+  /**
+   * Enables or disables {@link Trace} sections around {@code onDrawOver} and {@code getItemOffsets}, so
+   * that the header pipeline shows up in system traces. Requires API 18, ignored on older versions.
+   *
+   * @param enabled true to emit trace sections
+   */
+  public void setTraceEnabled(boolean enabled) {
+    mTraceEnabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private void beginTraceSection(String sectionName) {
+    if (mTraceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.beginSection(sectionName);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  private void endTraceSection() {
+    if (mTraceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.endSection();
+    }
+  }
+
+  /**
+   * Gives access to the cache of header views, to set its limits or read its hit, miss and eviction
+   * counters.
+   *
+   * @return the header view cache used by this decoration
+   */
+  public HeaderViewCache getHeaderViewCache() {
+    return mHeaderProvider;
+  }
+
+  /**
+   * Shares a pool of header ViewHolders with other decorations, like
+   * {@link RecyclerView#setRecycledViewPool(RecyclerView.RecycledViewPool)} does for items. Headers
+   * released by one decoration are then rebound by the others instead of being inflated again, which
+   * helps when several lists with the same headers are shown in turn, for example in the tabs of a
+   * ViewPager. All adapters sharing the pool must create the same header layout.
+   *
+   * Headers only reach the pool when a cache lets go of them, so pair it with
+   * {@link HeaderViewCache#setRecycleOffscreenHeaders(boolean)} or a cache limit, or call
+   * {@link #invalidateHeaders()} when a list is hidden, and size the pool with
+   * {@link HeaderViewPool#setMaxRecycledHeaders(int)}.
+   *
+   * @param pool the pool to share
+   */
+  public void setHeaderViewPool(HeaderViewPool pool) {
+    mHeaderProvider.setHeaderViewPool(pool);
+  }
+
+  /**
+   * Enables or disables snapshot rendering of headers. Each header is recorded once, and the recording
+   * is replayed on later frames until the header is rebound or re-measured. This saves the cost of
+   * the header's draw traversal on every frame, at the cost of the memory held by the recordings.
+   * Headers whose content changes without being rebound, such as images loaded asynchronously, will
+   * not be redrawn while this is enabled.
+   *
+   * @param enabled true to draw headers from snapshots
+   */
+  public void setHeaderSnapshotsEnabled(boolean enabled) {
+    mRenderer.setSnapshotsEnabled(enabled);
+  }
+
+  /**
+   * Enables or disables the section index. While enabled, header decisions are answered from a
+   * run-length table of the adapter's sections instead of calling {@link StickyRecyclerHeadersAdapter#getHeaderId(int)}
+   * on every frame. The table is kept up to date from the adapter's change notifications, so the adapter
+   * must be a {@link RecyclerView.Adapter} that notifies its observers of every change.
+   *
+   * @param enabled true to answer header lookups from the section index
+   */
+  public void setSectionIndexEnabled(boolean enabled) {
+    if (enabled == mSectionIndex.isEnabled()) {
+      return;
+    }
+    RecyclerView.Adapter adapter = getRecyclerViewAdapter();
+    if (enabled) {
+      adapter.registerAdapterDataObserver(mSectionIndex);
+    } else {
+      adapter.unregisterAdapterDataObserver(mSectionIndex);
+    }
+    mSectionIndex.setEnabled(enabled);
+  }
+
+  /**
+   * @return the section index used by this decoration. It only holds data while enabled.
+   */
+  public SectionIndex getSectionIndex() {
+    return mSectionIndex;
+  }
+
+  private RecyclerView.Adapter getRecyclerViewAdapter() {
+    if (mAdapter instanceof RecyclerView.Adapter) {
+      return (RecyclerView.Adapter) mAdapter;
+    } else {
+      throw new IllegalStateException("The section index of " +
+          StickyRecyclerHeadersDecoration.class.getSimpleName() +
+          " requires a " + StickyRecyclerHeadersAdapter.class.getSimpleName() +
+          " that is also a " + RecyclerView.Adapter.class.getSimpleName());
+    }
+  }
+
+  /**
+   * Invalidates the cached header for a header id. This does not invalidate the recyclerview, you
+   * should do that manually after calling this method.
+   *
+   * @param headerId of the header to invalidate
+   */
+  public void invalidateHeader(long headerId) {
+    mHeaderProvider.invalidate(headerId);
+    if (mOverlay != null) {
+      mOverlay.invalidateHeader(headerId);
+    }
+  }
+
+  /**
+   * Invalidates the cached headers of the items in a range of adapter positions. Each distinct header
+   * id in the range is invalidated once. With the section index enabled the range is walked section by
+   * section, so the index must already have received the change, which is the case once the adapter has
+   * notified its observers. Otherwise the header ids are read from the adapter, in batches if it
+   * implements {@link StickyRecyclerHeadersBatchAdapter}. This does not invalidate the recyclerview, you
+   * should do that manually after calling this method.
+   *
+   * @param positionStart first adapter position of the range
+   * @param itemCount     number of items in the range
+   */
+  public void invalidateHeadersInRange(int positionStart, int itemCount) {
+    int start = Math.max(positionStart, 0);
+    if (mSectionIndex.isEnabled()) {
+      int end = Math.min(positionStart + itemCount, mSectionIndex.getItemCount());
+      if (start >= end) {
+        return;
+      }
+      int sectionCount = mSectionIndex.getSectionCount();
+      for (int section = mSectionIndex.getSectionForPosition(start);
+          section < sectionCount && mSectionIndex.getPositionForSection(section) < end; section++) {
+        invalidateHeader(mSectionIndex.getHeaderIdForSection(section));
+      }
+      return;
+    }
+
+    int end = Math.min(positionStart + itemCount, mAdapter.getItemCount());
+    StickyRecyclerHeadersBatchAdapter batchAdapter = mAdapter instanceof StickyRecyclerHeadersBatchAdapter
+        ? (StickyRecyclerHeadersBatchAdapter) mAdapter : null;
+    if (batchAdapter != null && mInvalidationBatch == null) {
+      mInvalidationBatch = new long[INVALIDATION_BATCH_SIZE];
+    }
+    boolean hasPrevious = false;
+    long previousHeaderId = 0;
+    for (int position = start; position < end; position++) {
+      long headerId;
+      if (batchAdapter != null) {
+        int batchIndex = (position - start) % INVALIDATION_BATCH_SIZE;
+        if (batchIndex == 0) {
+          batchAdapter.getHeaderIds(position, Math.min(INVALIDATION_BATCH_SIZE, end - position), mInvalidationBatch);
+        }
+        headerId = mInvalidationBatch[batchIndex];
+      } else {
+        headerId = mAdapter.getHeaderId(position);
+      }
+      if (!hasPrevious || headerId != previousHeaderId) {
+        invalidateHeader(headerId);
+        previousHeaderId = headerId;
+        hasPrevious = true;
+      }
+    }
+  }
+
+  /**
+   * Releases cached headers according to the memory pressure reported by
+   * {@link ComponentCallbacks2#onTrimMemory(int)}. From the moderate level on, header snapshots and the
+   * headers that are off screen are dropped. From the critical level on, only the sticky header is kept.
+   * Dropped headers are created again as they are needed.
+   *
+   * @param level the trim memory level
+   * @see #setTrimMemoryLevels(int, int)
+   * @see #registerComponentCallbacks(Context)
+   */
+  public void onTrimMemory(int level) {
+    if (level >= mCriticalTrimLevel) {
+      mHeaderProvider.trimToHeader(mStickyHeaderId);
+      mRenderer.invalidateSnapshots();
+    } else if (level >= mModerateTrimLevel) {
+      mHeaderProvider.trimOffscreenHeaders();
+      mRenderer.invalidateSnapshots();
+    }
+  }
+
+  /**
+   * Sets the trim memory levels at which {@link #onTrimMemory(int)} releases headers. The defaults are
+   * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} and
+   * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL}.
+   *
+   * @param moderateLevel level from which off screen headers and snapshots are dropped
+   * @param criticalLevel level from which all headers but the sticky one are dropped
+   */
+  public void setTrimMemoryLevels(int moderateLevel, int criticalLevel) {
+    mModerateTrimLevel = moderateLevel;
+    mCriticalTrimLevel = criticalLevel;
+  }
+
+  /**
+   * Registers with the application context so that {@link #onTrimMemory(int)} is called by the system.
+   * Requires API 14, ignored on older versions. Unregister with
+   * {@link #unregisterComponentCallbacks(Context)} when the RecyclerView goes away.
+   *
+   * @param context any context of the application
+   */
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  public void registerComponentCallbacks(Context context) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH || mComponentCallbacks != null) {
+      return;
+    }
+    mComponentCallbacks = new ComponentCallbacks2() {
+      @Override
+      public void onTrimMemory(int level) {
+        StickyRecyclerHeadersDecoration.this.onTrimMemory(level);
+      }
+
+      @Override
+      public void onConfigurationChanged(Configuration newConfig) {
+      }
+
+      @Override
+      public void onLowMemory() {
+        StickyRecyclerHeadersDecoration.this.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+      }
+    };
+    context.getApplicationContext().registerComponentCallbacks(mComponentCallbacks);
+  }
+
+  /**
+   * @param context any context of the application
+   */
+  @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+  public void unregisterComponentCallbacks(Context context) {
+    // Only set once registered, which requires API 14
+    if (mComponentCallbacks != null) {
+      context.getApplicationContext().unregisterComponentCallbacks(mComponentCallbacks);
+      mComponentCallbacks = null;
+    }
+  }
+
+  /**
+   * Refreshes the header of a section whose content changed, such as a live counter. The cached header
+   * is bound again through {@link StickyRecyclerHeadersAdapter#onBindHeaderViewHolder} the next time it
+   * is drawn, so any number of calls within a frame cost a single rebind, and headers that are off screen
+   * cost nothing until they come back. Only the area of the RecyclerView where the header was last drawn
+   * is invalidated. A {@link StickyHeadersOverlay} showing the header rebinds its view as well.
+   *
+   * @param parent   the recyclerview
+   * @param headerId of the header that changed
+   */
+  public void notifyHeaderChanged(RecyclerView parent, long headerId) {
+    boolean cached = mHeaderProvider.markChanged(headerId);
+    if (mOverlay != null) {
+      // After marking the cached header, whose new size the overlay takes on
+      mOverlay.notifyHeaderChanged(headerId);
+    }
+    if (!cached) {
+      // Bound with the new content whenever it is created
+      return;
+    }
+    for (int i = 0; i < mHeaderRects.size(); i++) {
+      if (mSectionIndex.getHeaderId(mHeaderRects.getPosition(i)) == headerId) {
+        mHeaderRects.getBounds(i, mTempRect);
+        parent.invalidate(mTempRect.left, mTempRect.top, mTempRect.right, mTempRect.bottom);
+      }
+    }
+  }
+
   /**
    * Invalidates cached headers.  This does not invalidate the recyclerview, you should do that manually after
-   * calling this method.
+   * calling this method. If the adapter implements {@link StickyRecyclerHeadersContentAdapter}, headers
+   * whose content key didn't change are kept.
    */
   public void invalidateHeaders() {
     mHeaderProvider.invalidate();
+    if (!(mAdapter instanceof StickyRecyclerHeadersContentAdapter)) {
+      // Otherwise the snapshots of rebound headers are dropped as they are rebound
+      mRenderer.invalidateSnapshots();
+    }
     mHeaderRects.clear();
+    if (mOverlay != null) {
+      mOverlay.invalidate();
+    }
   }
 }
@@ -0,0 +1,180 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.widget.SectionIndexer;
+
+import com.timehop.stickyheadersrecyclerview.caching.SectionIndex;
+
+/**
+ * A {@link SectionIndexer} over the sections of a {@link StickyRecyclerHeadersDecoration}, for fast
+ * scrollers and section bubbles. Sections are runs of consecutive items sharing a header id, and
+ * {@link #getSections()} returns their header ids. Positions are looked up with binary searches over the
+ * section index of the decoration, which is enabled when the indexer is created. The array of sections and
+ * the sections of each header id are built once, and again after the index is updated with a change.
+ *
+ * <pre>
+ * StickyRecyclerHeadersSectionIndexer indexer = new StickyRecyclerHeadersSectionIndexer(headersDecor);
+ * indexer.scrollToHeaderId(recyclerView, headerId);
+ * </pre>
+ */
+public class StickyRecyclerHeadersSectionIndexer implements SectionIndexer {
+
+  private final SectionIndex mSectionIndex;
+
+  /**
+   * First section of each header id
+   */
+  private final LongSparseArray<Integer> mSectionsByHeaderId = new LongSparseArray<>();
+
+  /**
+   * Header ids of all sections, or null if the index changed since they were read
+   */
+  private Long[] mSections;
+
+  /**
+   * Drops the sections read from the index once it has been updated with a change.
+   */
+  private final RecyclerView.AdapterDataObserver mUpdateObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      mSections = null;
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      mSections = null;
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      mSections = null;
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      mSections = null;
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      mSections = null;
+    }
+  };
+
+  /**
+   * @param decoration whose sections to index. Its adapter must be a {@link RecyclerView.Adapter}.
+   */
+  public StickyRecyclerHeadersSectionIndexer(StickyRecyclerHeadersDecoration decoration) {
+    decoration.setSectionIndexEnabled(true);
+    mSectionIndex = decoration.getSectionIndex();
+    mSectionIndex.addUpdateObserver(mUpdateObserver);
+  }
+
+  /**
+   * @return the header ids of all sections, as {@link Long}s. The same array is returned until the
+   * sections change.
+   */
+  @Override
+  public Object[] getSections() {
+    return getSectionArray();
+  }
+
+  @Override
+  public int getPositionForSection(int section) {
+    int sectionCount = mSectionIndex.getSectionCount();
+    if (sectionCount == 0) {
+      return 0;
+    }
+    return mSectionIndex.getPositionForSection(Math.max(0, Math.min(section, sectionCount - 1)));
+  }
+
+  @Override
+  public int getSectionForPosition(int position) {
+    int itemCount = mSectionIndex.getItemCount();
+    if (itemCount == 0) {
+      return 0;
+    }
+    return mSectionIndex.getSectionForPosition(Math.max(0, Math.min(position, itemCount - 1)));
+  }
+
+  /**
+   * @param fraction of the list scrolled through, between 0 and 1, as shown by a fast scroller
+   * @return index of the section at that fraction of the items
+   */
+  public int getSectionForFraction(float fraction) {
+    return getSectionForPosition((int) (fraction * (mSectionIndex.getItemCount() - 1)));
+  }
+
+  /**
+   * @param headerId of a section
+   * @return index of the first section with the header id, or -1 if there is none
+   */
+  public int getSectionForHeaderId(long headerId) {
+    getSectionArray();
+    Integer section = mSectionsByHeaderId.get(headerId);
+    return section != null ? section : -1;
+  }
+
+  /**
+   * @return the header ids of all sections, reading them from the index if it changed since last time
+   */
+  private Long[] getSectionArray() {
+    if (mSections != null) {
+      return mSections;
+    }
+    Long[] sections = new Long[mSectionIndex.getSectionCount()];
+    mSectionsByHeaderId.clear();
+    for (int section = 0; section < sections.length; section++) {
+      long headerId = mSectionIndex.getHeaderIdForSection(section);
+      sections[section] = headerId;
+      if (mSectionsByHeaderId.indexOfKey(headerId) < 0) {
+        mSectionsByHeaderId.put(headerId, section);
+      }
+    }
+    mSections = sections;
+    return sections;
+  }
+
+  /**
+   * Scrolls so that the first section with a header id starts at the edge of the list, with its header
+   * in front of its first item. Since the item offsets already make room for the header, this lands
+   * exactly in one layout pass.
+   *
+   * @param recyclerView to scroll, which must use a {@link LinearLayoutManager} that is not reversed
+   * @param headerId     of the section to scroll to
+   * @return true if a section with the header id was found
+   */
+  public boolean scrollToHeaderId(RecyclerView recyclerView, long headerId) {
+    int section = getSectionForHeaderId(headerId);
+    if (section < 0) {
+      return false;
+    }
+    scrollToSectionIndex(recyclerView, section);
+    return true;
+  }
+
+  /**
+   * Scrolls so that a section starts at the edge of the list, with its header in front of its first
+   * item.
+   *
+   * @param recyclerView to scroll, which must use a {@link LinearLayoutManager} that is not reversed
+   * @param section      index of the section to scroll to, as returned by {@link #getSectionForPosition(int)}
+   */
+  public void scrollToSectionIndex(RecyclerView recyclerView, int section) {
+    RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+    if (!(layoutManager instanceof LinearLayoutManager)) {
+      throw new IllegalStateException(StickyRecyclerHeadersSectionIndexer.class.getSimpleName()
+          + " can only be used with a LinearLayoutManager.");
+    }
+    LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+    if (linearLayoutManager.getReverseLayout()) {
+      // The offset of a reversed layout is measured from the end of the list, so placing the section at
+      // its start would need the size of items that aren't laid out yet
+      throw new IllegalStateException(StickyRecyclerHeadersSectionIndexer.class.getSimpleName()
+          + " can not scroll reverse layouts.");
+    }
+    linearLayoutManager.scrollToPositionWithOffset(mSectionIndex.getPositionForSection(section), 0);
+  }
+}
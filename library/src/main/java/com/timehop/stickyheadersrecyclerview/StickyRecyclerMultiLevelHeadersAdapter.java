@@ -0,0 +1,50 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+/**
+ * Adapter for {@link StickyRecyclerMultiLevelHeadersDecoration}, which stacks several levels of nested
+ * headers, for example months and the days within them. Level 0 is the outermost level. The sections of
+ * an inner level must not span a boundary of an outer level.
+ */
+public interface StickyRecyclerMultiLevelHeadersAdapter<VH extends RecyclerView.ViewHolder> {
+
+  /**
+   * @return the number of header levels, which must not change while the adapter is attached
+   */
+  int getHeaderLevelCount();
+
+  /**
+   * Get the ID of the header associated with this item at a level. Return a value &lt; 0 if the item
+   * should not have a header at that level.
+   *
+   * @param position the position of the view to get the header ID of
+   * @param level    the header level, 0 being the outermost
+   * @return the header ID
+   */
+  long getHeaderId(int position, int level);
+
+  /**
+   * Creates a new ViewHolder for a header of a level.
+   *
+   * @param parent the view to create a header view holder for
+   * @param level  the header level
+   * @return the view holder
+   */
+  VH onCreateHeaderViewHolder(ViewGroup parent, int level);
+
+  /**
+   * Binds an existing ViewHolder of a level to the specified adapter position.
+   *
+   * @param holder   the view holder
+   * @param position the adapter position
+   * @param level    the header level
+   */
+  void onBindHeaderViewHolder(VH holder, int position, int level);
+
+  /**
+   * @return the number of views in the adapter
+   */
+  int getItemCount();
+}
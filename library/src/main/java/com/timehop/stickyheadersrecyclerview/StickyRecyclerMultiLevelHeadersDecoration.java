@@ -0,0 +1,384 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.timehop.stickyheadersrecyclerview.caching.HeaderViewCache;
+import com.timehop.stickyheadersrecyclerview.caching.SectionIndex;
+import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.calculation.HeaderRectTable;
+import com.timehop.stickyheadersrecyclerview.rendering.HeaderRenderer;
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
+import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
+import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
+
+import java.util.Arrays;
+
+/**
+ * Draws nested levels of sticky headers in a single decoration, for example months and the days within
+ * them. The first item of a section gets the headers of every level that starts at it, stacked in front
+ * of it. The sticky headers of all levels are stacked at the start of the list, and each is pushed off by
+ * the next header of its own level or of an outer one.
+ *
+ * Each frame walks the laid out children once, asking the adapter for the header id of every level of
+ * each child once. The ids of the previous child are reused to find where sections start, so only the
+ * item before the first child is read in addition. Reverse layouts are not supported.
+ */
+public class StickyRecyclerMultiLevelHeadersDecoration extends RecyclerView.ItemDecoration {
+
+  private final StickyRecyclerMultiLevelHeadersAdapter mAdapter;
+  private final int mLevelCount;
+  private final HeaderViewCache[] mHeaderCaches;
+  private final OrientationProvider mOrientationProvider;
+  private final DimensionCalculator mDimensionCalculator;
+  private final HeaderRenderer mRenderer;
+  private final HeaderRectTable mHeaderRects = new HeaderRectTable();
+
+  /**
+   * Layout properties of the RecyclerView, captured once per pass and shared with the header caches.
+   */
+  private final LayoutSnapshot mLayoutSnapshot = new LayoutSnapshot();
+
+  /**
+   * The following fields are used as buffers for internal calculations. Their sole purpose is to avoid
+   * allocating new objects every time we need one.
+   */
+  private final Rect mTempRect = new Rect();
+  private final Rect mHeaderBounds = new Rect();
+
+  /**
+   * Per level: the start of the header stack of the first later child that begins a section at that
+   * level or an outer one, and the default start of the first child's header if it begins a section there.
+   */
+  private final int[] mPushLimits;
+  private final int[] mFirstHeaderStarts;
+
+  /**
+   * Per level: the header ids of the current item, of the item read before it, and of the first child.
+   */
+  private long[] mHeaderIds;
+  private long[] mPreviousHeaderIds;
+  private final long[] mFirstHeaderIds;
+  private int mPreviousPosition = RecyclerView.NO_POSITION;
+
+  public StickyRecyclerMultiLevelHeadersDecoration(StickyRecyclerMultiLevelHeadersAdapter adapter) {
+    this(adapter, new LinearLayoutOrientationProvider(), new DimensionCalculator());
+  }
+
+  private StickyRecyclerMultiLevelHeadersDecoration(StickyRecyclerMultiLevelHeadersAdapter adapter,
+      OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator) {
+    mAdapter = adapter;
+    mLevelCount = adapter.getHeaderLevelCount();
+    mOrientationProvider = orientationProvider;
+    mDimensionCalculator = dimensionCalculator;
+    mRenderer = new HeaderRenderer(orientationProvider);
+    mHeaderCaches = new HeaderViewCache[mLevelCount];
+    for (int level = 0; level < mLevelCount; level++) {
+      LevelAdapter levelAdapter = new LevelAdapter(adapter, level);
+      mHeaderCaches[level] = new HeaderViewCache(levelAdapter, new SectionIndex(levelAdapter), orientationProvider,
+          dimensionCalculator);
+      mHeaderCaches[level].setLayoutSnapshot(mLayoutSnapshot);
+    }
+    mPushLimits = new int[mLevelCount];
+    mFirstHeaderStarts = new int[mLevelCount];
+    mHeaderIds = new long[mLevelCount];
+    mPreviousHeaderIds = new long[mLevelCount];
+    mFirstHeaderIds = new long[mLevelCount];
+  }
+
+  @Override
+  public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+    super.getItemOffsets(outRect, view, parent, state);
+    int position = parent.getChildAdapterPosition(view);
+    if (position == RecyclerView.NO_POSITION) {
+      return;
+    }
+    // Captured by the first item of a layout pass
+    mLayoutSnapshot.captureIfNeeded(parent, mOrientationProvider);
+    throwIfReverseLayout(mLayoutSnapshot);
+
+    // Offsets are requested out of order and across data changes, so nothing is reused between items
+    mPreviousPosition = RecyclerView.NO_POSITION;
+    int offset = 0;
+    for (int level = readHeaderIds(position); level < mLevelCount; level++) {
+      if (mHeaderIds[level] >= 0) {
+        offset += mHeaderCaches[level].getItemOffset(parent, position, mHeaderIds[level]);
+      }
+    }
+    if (mLayoutSnapshot.isVertical()) {
+      outRect.top = offset;
+    } else {
+      outRect.left = offset;
+    }
+  }
+
+  @Override
+  public void onDrawOver(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+    super.onDrawOver(canvas, parent, state);
+    for (int level = 0; level < mLevelCount; level++) {
+      mHeaderCaches[level].startFrame();
+    }
+    mRenderer.startFrame();
+    mHeaderRects.clear();
+
+    int childCount = parent.getChildCount();
+    if (childCount > 0 && mAdapter.getItemCount() > 0) {
+      drawHeaders(canvas, parent, childCount);
+    }
+    // The next layout pass captures the layout again
+    mLayoutSnapshot.invalidate();
+  }
+
+  private void drawHeaders(Canvas canvas, RecyclerView parent, int childCount) {
+    LayoutSnapshot layout = mLayoutSnapshot;
+    layout.capture(parent, mOrientationProvider);
+    throwIfReverseLayout(layout);
+    Arrays.fill(mPushLimits, Integer.MAX_VALUE);
+    Arrays.fill(mFirstHeaderStarts, Integer.MIN_VALUE);
+    mPreviousPosition = RecyclerView.NO_POSITION;
+
+    // Draws the headers in front of the items, and collects what the sticky headers need
+    View firstView = null;
+    int firstPosition = RecyclerView.NO_POSITION;
+    for (int i = 0; i < childCount; i++) {
+      View itemView = parent.getChildAt(i);
+      int position = parent.getChildAdapterPosition(itemView);
+      if (position == RecyclerView.NO_POSITION) {
+        continue;
+      }
+      int firstNewLevel = readHeaderIds(position);
+      boolean first = firstView == null;
+      if (first) {
+        firstView = itemView;
+        firstPosition = position;
+        System.arraycopy(mHeaderIds, 0, mFirstHeaderIds, 0, mLevelCount);
+      }
+      int end = getItemStart(layout, itemView);
+      for (int level = mLevelCount - 1; level >= firstNewLevel; level--) {
+        if (mHeaderIds[level] < 0) {
+          continue;
+        }
+        View header = mHeaderCaches[level].getHeader(parent, position, mHeaderIds[level]);
+        mDimensionCalculator.initMargins(mTempRect, header);
+        int start = end - getMarginAfter(layout, mTempRect) - getExtent(layout, header);
+        end = start - getMarginBefore(layout, mTempRect);
+        if (first) {
+          // Positioned with the sticky headers
+          mFirstHeaderStarts[level] = start;
+        } else if (start + getExtent(layout, header) > getListStart(layout) && start < getListEnd(layout)) {
+          initBounds(mHeaderBounds, layout, header, itemView, start);
+          mRenderer.drawHeader(layout, canvas, header, mHeaderBounds);
+          mHeaderRects.add(position, mHeaderBounds);
+        }
+      }
+      if (!first) {
+        for (int level = firstNewLevel; level < mLevelCount && mPushLimits[level] == Integer.MAX_VALUE; level++) {
+          mPushLimits[level] = end;
+        }
+      }
+      long[] headerIds = mPreviousHeaderIds;
+      mPreviousHeaderIds = mHeaderIds;
+      mHeaderIds = headerIds;
+      mPreviousPosition = position;
+    }
+    if (firstView != null) {
+      drawStickyHeaders(canvas, parent, layout, firstView, firstPosition);
+    }
+  }
+
+  /**
+   * Stacks the sticky headers of the first item from the outermost level in, then draws them from the
+   * innermost level out so that outer headers cover the inner ones being pushed under them.
+   */
+  private void drawStickyHeaders(Canvas canvas, RecyclerView parent, LayoutSnapshot layout, View firstView,
+      int firstPosition) {
+    int stackEnd = getListStart(layout);
+    int stickyLevels = 0;
+    for (int level = 0; level < mLevelCount; level++) {
+      if (mFirstHeaderIds[level] < 0) {
+        mFirstHeaderStarts[level] = Integer.MIN_VALUE;
+        continue;
+      }
+      View header = mHeaderCaches[level].getHeader(parent, firstPosition, mFirstHeaderIds[level]);
+      mDimensionCalculator.initMargins(mTempRect, header);
+      int start = Math.max(stackEnd + getMarginBefore(layout, mTempRect), mFirstHeaderStarts[level]);
+      int end = start + getExtent(layout, header) + getMarginAfter(layout, mTempRect);
+      if (end > mPushLimits[level]) {
+        start -= end - mPushLimits[level];
+        end = mPushLimits[level];
+      }
+      stackEnd = end;
+      // Reused to hold the final start of each sticky header
+      mFirstHeaderStarts[level] = start;
+      stickyLevels++;
+    }
+
+    for (int level = mLevelCount - 1; level >= 0 && stickyLevels > 0; level--) {
+      if (mFirstHeaderStarts[level] == Integer.MIN_VALUE) {
+        continue;
+      }
+      View header = mHeaderCaches[level].getHeader(parent, firstPosition, mFirstHeaderIds[level]);
+      initBounds(mHeaderBounds, layout, header, firstView, mFirstHeaderStarts[level]);
+      mRenderer.drawHeader(layout, canvas, header, mHeaderBounds);
+      mHeaderRects.add(firstPosition, mHeaderBounds);
+    }
+  }
+
+  /**
+   * Reads the header ids of every level of an item into {@link #mHeaderIds}. The ids of the item before
+   * it are taken from {@link #mPreviousHeaderIds} if they were read for it, and are otherwise read up to
+   * the first level that differs.
+   *
+   * @return the outermost level at which the item starts a new section, or the level count if it
+   * starts none
+   */
+  private int readHeaderIds(int position) {
+    for (int level = 0; level < mLevelCount; level++) {
+      mHeaderIds[level] = mAdapter.getHeaderId(position, level);
+    }
+    if (position == 0) {
+      return 0;
+    }
+    boolean previousRead = mPreviousPosition == position - 1;
+    for (int level = 0; level < mLevelCount; level++) {
+      long previousHeaderId = previousRead ? mPreviousHeaderIds[level] : mAdapter.getHeaderId(position - 1, level);
+      if (mHeaderIds[level] != previousHeaderId) {
+        return level;
+      }
+    }
+    return mLevelCount;
+  }
+
+  private void initBounds(Rect bounds, LayoutSnapshot layout, View header, View itemView, int start) {
+    ViewGroup.LayoutParams layoutParams = itemView.getLayoutParams();
+    ViewGroup.MarginLayoutParams marginLayoutParams = layoutParams instanceof ViewGroup.MarginLayoutParams
+        ? (ViewGroup.MarginLayoutParams) layoutParams : null;
+    if (layout.isVertical()) {
+      int left = itemView.getLeft() - (marginLayoutParams != null ? marginLayoutParams.leftMargin : 0)
+          + mTempRect.left;
+      bounds.set(left, start, left + header.getWidth(), start + header.getHeight());
+    } else {
+      int top = itemView.getTop() - (marginLayoutParams != null ? marginLayoutParams.topMargin : 0)
+          + mTempRect.top;
+      bounds.set(start, top, start + header.getWidth(), top + header.getHeight());
+    }
+  }
+
+  private static int getItemStart(LayoutSnapshot layout, View itemView) {
+    ViewGroup.LayoutParams layoutParams = itemView.getLayoutParams();
+    ViewGroup.MarginLayoutParams marginLayoutParams = layoutParams instanceof ViewGroup.MarginLayoutParams
+        ? (ViewGroup.MarginLayoutParams) layoutParams : null;
+    if (layout.isVertical()) {
+      return itemView.getTop() - (marginLayoutParams != null ? marginLayoutParams.topMargin : 0);
+    }
+    return itemView.getLeft() - (marginLayoutParams != null ? marginLayoutParams.leftMargin : 0);
+  }
+
+  private static int getExtent(LayoutSnapshot layout, View header) {
+    return layout.isVertical() ? header.getHeight() : header.getWidth();
+  }
+
+  private static int getMarginBefore(LayoutSnapshot layout, Rect margins) {
+    return layout.isVertical() ? margins.top : margins.left;
+  }
+
+  private static int getMarginAfter(LayoutSnapshot layout, Rect margins) {
+    return layout.isVertical() ? margins.bottom : margins.right;
+  }
+
+  private static int getListStart(LayoutSnapshot layout) {
+    return layout.isVertical() ? layout.getListTop() : layout.getListLeft();
+  }
+
+  private static int getListEnd(LayoutSnapshot layout) {
+    return layout.isVertical() ? layout.getListBottom() : layout.getListRight();
+  }
+
+  private static void throwIfReverseLayout(LayoutSnapshot layout) {
+    if (layout.isReverseLayout()) {
+      throw new IllegalStateException(StickyRecyclerMultiLevelHeadersDecoration.class.getSimpleName()
+          + " does not support reverse layouts.");
+    }
+  }
+
+  /**
+   * Gets the position of the header under the specified (x, y) coordinates. Only the headers drawn
+   * during the last frame are considered, starting with the one drawn last since it is on top.
+   *
+   * @param x x-coordinate
+   * @param y y-coordinate
+   * @return position of header, or -1 if not found
+   */
+  public int findHeaderPositionUnder(int x, int y) {
+    for (int i = mHeaderRects.size() - 1; i >= 0; i--) {
+      if (mHeaderRects.contains(i, x, y)) {
+        return mHeaderRects.getPosition(i);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the header view of a level for the associated position. If it doesn't exist yet, it will be
+   * created, measured, and laid out.
+   *
+   * @param parent   the recyclerview
+   * @param position the position to get the header view for
+   * @param level    the header level
+   * @return Header view
+   */
+  public View getHeaderView(RecyclerView parent, int position, int level) {
+    return mHeaderCaches[level].getHeader(parent, position);
+  }
+
+  /**
+   * Invalidates cached headers of all levels. This does not invalidate the recyclerview, you should do
+   * that manually after calling this method.
+   */
+  public void invalidateHeaders() {
+    for (int level = 0; level < mLevelCount; level++) {
+      mHeaderCaches[level].invalidate();
+    }
+    mRenderer.invalidateSnapshots();
+    mHeaderRects.clear();
+  }
+
+  /**
+   * Presents one level of a {@link StickyRecyclerMultiLevelHeadersAdapter} as a
+   * {@link StickyRecyclerHeadersAdapter}, so that each level can be cached by its own {@link HeaderViewCache}.
+   */
+  private static class LevelAdapter implements StickyRecyclerHeadersAdapter<RecyclerView.ViewHolder> {
+
+    private final StickyRecyclerMultiLevelHeadersAdapter<RecyclerView.ViewHolder> mAdapter;
+    private final int mLevel;
+
+    @SuppressWarnings("unchecked")
+    LevelAdapter(StickyRecyclerMultiLevelHeadersAdapter adapter, int level) {
+      mAdapter = adapter;
+      mLevel = level;
+    }
+
+    @Override
+    public long getHeaderId(int position) {
+      return mAdapter.getHeaderId(position, mLevel);
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateHeaderViewHolder(ViewGroup parent) {
+      return mAdapter.onCreateHeaderViewHolder(parent, mLevel);
+    }
+
+    @Override
+    public void onBindHeaderViewHolder(RecyclerView.ViewHolder holder, int position) {
+      mAdapter.onBindHeaderViewHolder(holder, position, mLevel);
+    }
+
+    @Override
+    public int getItemCount() {
+      return mAdapter.getItemCount();
+    }
+  }
+}
@@ -1,68 +1,822 @@
 package com.timehop.stickyheadersrecyclerview.caching;
 
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.util.LongSparseArray;
-import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.timehop.stickyheadersrecyclerview.StickyHeadersMetrics;
 import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter;
+import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersContentAdapter;
+import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
+import java.util.concurrent.Executor;
+
 /**
- * An implementation of {@link HeaderProvider} that creates and caches header views
+ * An implementation of {@link HeaderProvider} that creates and caches header views.
+ *
+ * The cache is unbounded by default. Once a maximum number of headers or an approximate byte budget
+ * is set, the least recently used headers are evicted. Headers used during the current frame are
+ * never evicted, so the cache may temporarily exceed its limits if more headers are on screen than
+ * it is allowed to hold.
+ *
+ * Headers are measured against the size and padding of the parent. When those change, cached headers
+ * are re-measured and laid out again the next time they are requested, without being rebound.
+ *
+ * If the adapter implements {@link StickyRecyclerHeadersContentAdapter}, {@link #invalidate()} only marks
+ * the cached headers as stale. A stale header is kept if its content key is unchanged when it is next
+ * requested, and rebound otherwise. Stale headers that are not requested during the next frame are dropped.
+ *
+ * The item offset that makes room for each header is computed once and cached along with it.
+ *
+ * Evicted and invalidated headers are returned to a {@link HeaderViewPool} and rebound for other
+ * header ids, so headers are only inflated until the pool is warm.
  */
 public class HeaderViewCache implements HeaderProvider {
 
+  /**
+   * Approximate number of bytes per pixel retained by a measured header, assuming ARGB_8888.
+   */
+  private static final int BYTES_PER_PIXEL = 4;
+
   private final StickyRecyclerHeadersAdapter mAdapter;
-  private final LongSparseArray<View> mHeaderViews = new LongSparseArray<>();
+  private final StickyRecyclerHeadersContentAdapter mContentAdapter;
+  private final SectionIndex mSectionIndex;
+  private final LongSparseArray<Entry> mHeaderViews = new LongSparseArray<>();
   private final OrientationProvider mOrientationProvider;
+  private final DimensionCalculator mDimensionCalculator;
+  private final Rect mTempRect = new Rect();
+
+  /**
+   * Holds the layout of the parent for requests made outside of the passes of a decoration.
+   */
+  private final LayoutSnapshot mRequestLayout = new LayoutSnapshot();
+
+  /**
+   * Sentinel of the circular LRU list. {@code mLruHead.mNext} is the most recently used entry and
+   * {@code mLruHead.mPrevious} the least recently used one.
+   */
+  private final Entry mLruHead = new Entry();
+
+  private LayoutSnapshot mLayoutSnapshot;
+  private HeaderViewPool mHeaderViewPool = new HeaderViewPool();
+  private boolean mRecycleOffscreenHeaders;
+  private OnHeaderBoundListener mOnHeaderBoundListener;
+  private StickyHeadersMetrics mMetrics;
+
+  private final LongSparseArray<PendingHeader> mPendingHeaders = new LongSparseArray<>();
+  private Executor mAsyncExecutor;
+  private Handler mMainThreadHandler;
+  private View mPlaceholder;
+  private int mReservedWidth;
+  private int mReservedHeight;
+
+  /**
+   * Size and padding of the parent when headers were last requested, and the measure specs derived
+   * from them.
+   */
+  private boolean mHasParentSpecs;
+  private boolean mVertical;
+  private int mParentWidth;
+  private int mParentHeight;
+  private int mHorizontalPadding;
+  private int mVerticalPadding;
+  private int mParentWidthSpec;
+  private int mParentHeightSpec;
+
+  private int mMaxHeaders = Integer.MAX_VALUE;
+  private long mMaxBytes = Long.MAX_VALUE;
+  private long mBytes;
+  private int mFrame;
+  private boolean mHasStaleEntries;
+  private int mInvalidatedFrame;
+
+  private int mHitCount;
+  private int mMissCount;
+  private int mEvictionCount;
 
   public HeaderViewCache(StickyRecyclerHeadersAdapter adapter,
       OrientationProvider orientationProvider) {
+    this(adapter, new SectionIndex(adapter), orientationProvider);
+  }
+
+  public HeaderViewCache(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      OrientationProvider orientationProvider) {
+    this(adapter, sectionIndex, orientationProvider, new DimensionCalculator());
+  }
+
+  public HeaderViewCache(StickyRecyclerHeadersAdapter adapter, SectionIndex sectionIndex,
+      OrientationProvider orientationProvider, DimensionCalculator dimensionCalculator) {
     mAdapter = adapter;
+    mContentAdapter = adapter instanceof StickyRecyclerHeadersContentAdapter
+        ? (StickyRecyclerHeadersContentAdapter) adapter : null;
+    mSectionIndex = sectionIndex;
     mOrientationProvider = orientationProvider;
+    mDimensionCalculator = dimensionCalculator;
+    mLruHead.mNext = mLruHead;
+    mLruHead.mPrevious = mLruHead;
   }
 
   @Override
   public View getHeader(RecyclerView parent, int position) {
-    long headerId = mAdapter.getHeaderId(position);
-
-    View header = mHeaderViews.get(headerId);
-    if (header == null) {
-      //TODO - recycle views
-      RecyclerView.ViewHolder viewHolder = mAdapter.onCreateHeaderViewHolder(parent);
-      mAdapter.onBindHeaderViewHolder(viewHolder, position);
-      header = viewHolder.itemView;
-      if (header.getLayoutParams() == null) {
-        header.setLayoutParams(new ViewGroup.LayoutParams(
-            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    return getHeader(parent, position, mSectionIndex.getHeaderId(position));
+  }
+
+  /**
+   * Same as {@link #getHeader(RecyclerView, int)}, for callers that already know the header id of the
+   * position and don't need it looked up again.
+   *
+   * @param parent   the recyclerview
+   * @param position of the first item of the section
+   * @param headerId of the item
+   * @return the header view
+   */
+  public View getHeader(RecyclerView parent, int position, long headerId) {
+    Entry entry = getEntry(parent, position, headerId);
+    return entry != null ? entry.mHeader : getPlaceholder(parent);
+  }
+
+  /**
+   * Gets the offset that makes room for the header of an item in front of it: the height of the header
+   * plus its vertical margins in a vertical list, or its width plus its horizontal margins in a
+   * horizontal one. Creates the header if needed.
+   *
+   * @param parent   the recyclerview
+   * @param position of the first item of the section
+   * @return the top or left offset of the item
+   */
+  public int getItemOffset(RecyclerView parent, int position) {
+    return getItemOffset(parent, position, mSectionIndex.getHeaderId(position));
+  }
+
+  /**
+   * Same as {@link #getItemOffset(RecyclerView, int)}, for callers that already know the header id of the
+   * position.
+   *
+   * @param parent   the recyclerview
+   * @param position of the first item of the section
+   * @param headerId of the item
+   * @return the top or left offset of the item
+   */
+  public int getItemOffset(RecyclerView parent, int position, long headerId) {
+    Entry entry = getEntry(parent, position, headerId);
+    if (entry == null) {
+      return mVertical ? mReservedHeight : mReservedWidth;
+    }
+    if (entry.mItemOffset < 0) {
+      View header = entry.mHeader;
+      mDimensionCalculator.initMargins(mTempRect, header);
+      entry.mItemOffset = mVertical
+          ? header.getHeight() + mTempRect.top + mTempRect.bottom
+          : header.getWidth() + mTempRect.left + mTempRect.right;
+    }
+    return entry.mItemOffset;
+  }
+
+  /**
+   * @return the cached entry of the header for the position, creating it if needed, or null if it is
+   * being created in the background
+   */
+  private Entry getEntry(RecyclerView parent, int position, long headerId) {
+    updateParentSpecs(parent);
+    Entry entry = mHeaderViews.get(headerId);
+    if (entry != null) {
+      mHitCount++;
+      if (mMetrics != null) {
+        mMetrics.onHeaderCacheHit();
+      }
+      entry.mPrefetched = false;
+      if (entry.mStale) {
+        reconcile(entry, position);
+      }
+      if (entry.mDirty) {
+        entry.mDirty = false;
+        rebind(entry, position, parent);
+      }
+      if (entry.mParentWidthSpec != mParentWidthSpec || entry.mParentHeightSpec != mParentHeightSpec
+          || entry.mHorizontalPadding != mHorizontalPadding || entry.mVerticalPadding != mVerticalPadding) {
+        remeasure(entry);
+      }
+      markUsed(entry);
+      return entry;
+    }
+
+    if (mAsyncExecutor != null) {
+      PendingHeader pendingHeader = mPendingHeaders.get(headerId);
+      if (pendingHeader != null) {
+        return null;
       }
+    }
 
-      int widthSpec;
-      int heightSpec;
+    mMissCount++;
+    if (mMetrics != null) {
+      mMetrics.onHeaderCacheMiss();
+    }
+    RecyclerView.ViewHolder viewHolder = mHeaderViewPool.acquire();
+    if (mAsyncExecutor != null && mReservedWidth > 0 && mReservedHeight > 0) {
+      PendingHeader pendingHeader = new PendingHeader(parent, headerId, position, viewHolder);
+      mPendingHeaders.put(headerId, pendingHeader);
+      mAsyncExecutor.execute(pendingHeader);
+      return null;
+    }
 
-      if (mOrientationProvider.getOrientation(parent) == LinearLayoutManager.VERTICAL) {
-        widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-        heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
-      } else {
-        widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.UNSPECIFIED);
-        heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.EXACTLY);
+    if (viewHolder == null) {
+      viewHolder = mAdapter.onCreateHeaderViewHolder(parent);
+      if (mMetrics != null) {
+        mMetrics.onHeaderCreated();
       }
+    }
+    mAdapter.onBindHeaderViewHolder(viewHolder, position);
+    if (mMetrics != null) {
+      mMetrics.onHeaderBound();
+    }
+    View header = viewHolder.itemView;
+    measureHeader(header, mParentWidthSpec, mParentHeightSpec, mHorizontalPadding, mVerticalPadding);
+    if (mMetrics != null) {
+      mMetrics.onHeaderMeasured();
+    }
+    return putHeader(headerId, position, viewHolder, mParentWidthSpec, mParentHeightSpec, mHorizontalPadding,
+        mVerticalPadding);
+  }
 
-      int childWidth = ViewGroup.getChildMeasureSpec(widthSpec,
-          parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
-      int childHeight = ViewGroup.getChildMeasureSpec(heightSpec,
-          parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
-      header.measure(childWidth, childHeight);
-      header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
-      mHeaderViews.put(headerId, header);
+  /**
+   * Creates the header for a position ahead of time, for a section that is about to be shown. Unlike the
+   * headers that go off screen, a prefetched header is not recycled by {@link #startFrame()} until it has
+   * been requested again, so it isn't bound twice. It is still subject to the limits of the cache and to
+   * {@link #trimOffscreenHeaders()}.
+   *
+   * @param parent   the recyclerview
+   * @param position of the first item of the section
+   * @param headerId of the item
+   */
+  public void prefetchHeader(RecyclerView parent, int position, long headerId) {
+    Entry entry = getEntry(parent, position, headerId);
+    if (entry != null) {
+      entry.mPrefetched = true;
+    }
+  }
+
+  /**
+   * Brings a stale header up to date with the adapter, rebinding it only if its content key changed.
+   */
+  private void reconcile(Entry entry, int position) {
+    entry.mStale = false;
+    long contentKey = mContentAdapter.getHeaderContentKey(position);
+    if (contentKey == entry.mContentKey) {
+      return;
+    }
+    entry.mContentKey = contentKey;
+    entry.mDirty = false;
+    rebind(entry, position, null);
+  }
+
+  /**
+   * Binds a cached header again, and marks it to be measured again by the caller since the new content
+   * may have a different size.
+   *
+   * @param parent to refresh the item offsets of if the size changes, or null if the caller takes care
+   *               of that
+   */
+  private void rebind(Entry entry, int position, final RecyclerView parent) {
+    mAdapter.onBindHeaderViewHolder(entry.mViewHolder, position);
+    if (mMetrics != null) {
+      mMetrics.onHeaderBound();
+    }
+    View header = entry.mHeader;
+    int width = header.getWidth();
+    int height = header.getHeight();
+    remeasure(entry);
+    if (parent != null && (header.getWidth() != width || header.getHeight() != height)) {
+      // Can't be done during a layout pass, which may be what requested the header
+      parent.post(new Runnable() {
+        @Override
+        public void run() {
+          parent.invalidateItemDecorations();
+        }
+      });
+    }
+  }
+
+  /**
+   * Marks a cached header to be bound again the next time it is requested. Requests made in between are
+   * coalesced into a single rebind, and headers that are not requested again are never rebound.
+   *
+   * @param headerId of the header that changed
+   * @return true if the header was cached
+   */
+  public boolean markChanged(long headerId) {
+    Entry entry = mHeaderViews.get(headerId);
+    if (entry == null) {
+      return false;
+    }
+    entry.mDirty = true;
+    return true;
+  }
+
+  private Entry putHeader(long headerId, int position, RecyclerView.ViewHolder viewHolder, int parentWidthSpec,
+      int parentHeightSpec, int horizontalPadding, int verticalPadding) {
+    View header = viewHolder.itemView;
+    if (mOnHeaderBoundListener != null) {
+      mOnHeaderBoundListener.onHeaderBound(header);
+    }
+
+    Entry entry = new Entry();
+    entry.mHeaderId = headerId;
+    entry.mViewHolder = viewHolder;
+    entry.mHeader = header;
+    if (mContentAdapter != null) {
+      entry.mContentKey = mContentAdapter.getHeaderContentKey(position);
+    }
+    entry.mParentWidthSpec = parentWidthSpec;
+    entry.mParentHeightSpec = parentHeightSpec;
+    entry.mHorizontalPadding = horizontalPadding;
+    entry.mVerticalPadding = verticalPadding;
+    entry.mBytes = (long) header.getMeasuredWidth() * header.getMeasuredHeight() * BYTES_PER_PIXEL;
+    mHeaderViews.put(headerId, entry);
+    mBytes += entry.mBytes;
+    mReservedWidth = header.getMeasuredWidth();
+    mReservedHeight = header.getMeasuredHeight();
+    markUsed(entry);
+    trimToLimits();
+    return entry;
+  }
+
+  /**
+   * Measures a cached header again against the current size and padding of the parent, without
+   * rebinding it. Headers are only re-measured when they are requested, so the headers that are off
+   * screen when the parent is resized are re-measured as they come back into view.
+   */
+  private void remeasure(Entry entry) {
+    View header = entry.mHeader;
+    measureHeader(header, mParentWidthSpec, mParentHeightSpec, mHorizontalPadding, mVerticalPadding);
+    if (mMetrics != null) {
+      mMetrics.onHeaderMeasured();
+    }
+    entry.mParentWidthSpec = mParentWidthSpec;
+    entry.mParentHeightSpec = mParentHeightSpec;
+    entry.mHorizontalPadding = mHorizontalPadding;
+    entry.mVerticalPadding = mVerticalPadding;
+    entry.mItemOffset = -1;
+    mBytes -= entry.mBytes;
+    entry.mBytes = (long) header.getMeasuredWidth() * header.getMeasuredHeight() * BYTES_PER_PIXEL;
+    mBytes += entry.mBytes;
+    if (mOnHeaderBoundListener != null) {
+      mOnHeaderBoundListener.onHeaderBound(header);
+    }
+  }
+
+  /**
+   * Updates the measure specs headers are measured against, if the size or padding of the parent changed
+   * since the last call. During a pass of the decoration they are read from its layout snapshot.
+   */
+  private void updateParentSpecs(RecyclerView parent) {
+    LayoutSnapshot layout = mLayoutSnapshot;
+    if (layout == null || !layout.isCaptured(parent)) {
+      layout = mRequestLayout;
+      layout.capture(parent, mOrientationProvider);
+    }
+    int width = layout.getWidth();
+    int height = layout.getHeight();
+    int horizontalPadding = layout.getPaddingLeft() + layout.getPaddingRight();
+    int verticalPadding = layout.getPaddingTop() + layout.getPaddingBottom();
+    boolean vertical = layout.isVertical();
+    if (mHasParentSpecs && width == mParentWidth && height == mParentHeight && vertical == mVertical
+        && horizontalPadding == mHorizontalPadding && verticalPadding == mVerticalPadding) {
+      return;
+    }
+    mVertical = vertical;
+    mParentWidth = width;
+    mParentHeight = height;
+    mHorizontalPadding = horizontalPadding;
+    mVerticalPadding = verticalPadding;
+    mParentWidthSpec = View.MeasureSpec.makeMeasureSpec(width,
+        vertical ? View.MeasureSpec.EXACTLY : View.MeasureSpec.UNSPECIFIED);
+    mParentHeightSpec = View.MeasureSpec.makeMeasureSpec(height,
+        vertical ? View.MeasureSpec.UNSPECIFIED : View.MeasureSpec.EXACTLY);
+    mHasParentSpecs = true;
+  }
+
+  /**
+   * Measures and lays out a header. Only touches the header itself, so it may run on a background thread.
+   */
+  private void measureHeader(View header, int parentWidthSpec, int parentHeightSpec, int horizontalPadding,
+      int verticalPadding) {
+    if (header.getLayoutParams() == null) {
+      header.setLayoutParams(new ViewGroup.LayoutParams(
+          ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
+
+    int childWidth = ViewGroup.getChildMeasureSpec(parentWidthSpec, horizontalPadding,
+        header.getLayoutParams().width);
+    int childHeight = ViewGroup.getChildMeasureSpec(parentHeightSpec, verticalPadding,
+        header.getLayoutParams().height);
+    header.measure(childWidth, childHeight);
+    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+  }
+
+  /**
+   * @return an empty view with the size of the last header created, drawn while a header is created
+   * in the background
+   */
+  private View getPlaceholder(RecyclerView parent) {
+    if (mPlaceholder == null) {
+      mPlaceholder = new View(parent.getContext());
+    }
+    if (mPlaceholder.getWidth() != mReservedWidth || mPlaceholder.getHeight() != mReservedHeight) {
+      mPlaceholder.measure(View.MeasureSpec.makeMeasureSpec(mReservedWidth, View.MeasureSpec.EXACTLY),
+          View.MeasureSpec.makeMeasureSpec(mReservedHeight, View.MeasureSpec.EXACTLY));
+      mPlaceholder.layout(0, 0, mReservedWidth, mReservedHeight);
+    }
+    return mPlaceholder;
+  }
+
+  private void onPendingHeaderReady(PendingHeader pendingHeader) {
+    if (mPendingHeaders.get(pendingHeader.mHeaderId) != pendingHeader
+        || mHeaderViews.get(pendingHeader.mHeaderId) != null) {
+      // Invalidated while it was being created
+      mHeaderViewPool.release(pendingHeader.mViewHolder);
+      return;
+    }
+    mPendingHeaders.remove(pendingHeader.mHeaderId);
+    if (mMetrics != null) {
+      if (pendingHeader.mCreated) {
+        mMetrics.onHeaderCreated();
+      }
+      mMetrics.onHeaderBound();
+      mMetrics.onHeaderMeasured();
+    }
+    // The space reserved for the header while it was pending, read before putHeader replaces it. The
+    // placeholder view itself may never have been created, if only the item offsets were requested.
+    int reservedWidth = mReservedWidth;
+    int reservedHeight = mReservedHeight;
+    View header = pendingHeader.mViewHolder.itemView;
+    putHeader(pendingHeader.mHeaderId, pendingHeader.mPosition, pendingHeader.mViewHolder,
+        pendingHeader.mParentWidthSpec,
+        pendingHeader.mParentHeightSpec, pendingHeader.mHorizontalPadding, pendingHeader.mVerticalPadding);
+    if (header.getWidth() == reservedWidth && header.getHeight() == reservedHeight) {
+      pendingHeader.mParent.invalidate();
+    } else {
+      // The item offsets were computed for the placeholder
+      pendingHeader.mParent.invalidateItemDecorations();
     }
-    return header;
   }
 
   @Override
   public void invalidate() {
+    mPendingHeaders.clear();
+    if (mContentAdapter != null) {
+      for (int i = 0; i < mHeaderViews.size(); i++) {
+        mHeaderViews.valueAt(i).mStale = true;
+      }
+      mHasStaleEntries = mHeaderViews.size() > 0;
+      mInvalidatedFrame = mFrame;
+      return;
+    }
+    for (int i = 0; i < mHeaderViews.size(); i++) {
+      mHeaderViewPool.release(mHeaderViews.valueAt(i).mViewHolder);
+    }
     mHeaderViews.clear();
+    mLruHead.mNext = mLruHead;
+    mLruHead.mPrevious = mLruHead;
+    mBytes = 0;
+  }
+
+  /**
+   * Drops the header cached for a header id, if any. Its ViewHolder goes back to the pool, and the
+   * header is rebound the next time it is requested.
+   *
+   * @param headerId of the header to drop
+   */
+  public void invalidate(long headerId) {
+    mPendingHeaders.remove(headerId);
+    Entry entry = mHeaderViews.get(headerId);
+    if (entry != null) {
+      remove(entry);
+    }
+  }
+
+  /**
+   * Drops the headers that were not drawn during the last frame, and empties the pool of recycled
+   * headers. Headers are created again as they come back on screen.
+   */
+  public void trimOffscreenHeaders() {
+    Entry entry = mLruHead.mPrevious;
+    while (entry != mLruHead && entry.mLastUsedFrame != mFrame) {
+      Entry previous = entry.mPrevious;
+      remove(entry);
+      entry = previous;
+    }
+    mHeaderViewPool.clear();
+  }
+
+  /**
+   * Drops every header except one, and empties the pool of recycled headers.
+   *
+   * @param headerId of the header to keep, such as the sticky one
+   */
+  public void trimToHeader(long headerId) {
+    mPendingHeaders.clear();
+    Entry entry = mLruHead.mPrevious;
+    while (entry != mLruHead) {
+      Entry previous = entry.mPrevious;
+      if (entry.mHeaderId != headerId) {
+        remove(entry);
+      }
+      entry = previous;
+    }
+    mHeaderViewPool.clear();
+  }
+
+  /**
+   * Marks the start of a new frame. Headers requested before the next call are considered on screen
+   * and are protected from eviction. If offscreen headers are recycled, the headers that were not
+   * used since the previous frame started go back to the pool, except for prefetched headers that
+   * haven't been shown yet.
+   */
+  public void startFrame() {
+    if (mHasStaleEntries && mFrame != mInvalidatedFrame) {
+      // A frame has been drawn since the headers were invalidated, the ones still stale are gone
+      for (int i = mHeaderViews.size() - 1; i >= 0; i--) {
+        Entry entry = mHeaderViews.valueAt(i);
+        if (entry.mStale) {
+          remove(entry);
+        }
+      }
+      mHasStaleEntries = false;
+    }
+    if (mRecycleOffscreenHeaders) {
+      Entry entry = mLruHead.mPrevious;
+      while (entry != mLruHead && entry.mLastUsedFrame != mFrame) {
+        Entry previous = entry.mPrevious;
+        if (!entry.mPrefetched) {
+          remove(entry);
+        }
+        entry = previous;
+      }
+    }
+    mFrame++;
+  }
+
+  /**
+   * When enabled, headers that were not used during the last frame are returned to the
+   * {@link HeaderViewPool} and rebound when they come back on screen, instead of staying cached.
+   * Only the headers near the viewport stay bound, at the cost of rebinding headers that scroll back in.
+   * Prefetched headers are kept until they are shown.
+   *
+   * @param recycle true to recycle headers as soon as they go off screen
+   */
+  public void setRecycleOffscreenHeaders(boolean recycle) {
+    mRecycleOffscreenHeaders = recycle;
+  }
+
+  /**
+   * Creates, binds and measures new headers on a background executor instead of the UI thread. Until a
+   * header is ready, an empty placeholder with the size of the last header created is returned in its
+   * place, and the RecyclerView is invalidated once when it is swapped in. The first header is always
+   * created synchronously to learn that size.
+   *
+   * The adapter's {@link StickyRecyclerHeadersAdapter#onCreateHeaderViewHolder(ViewGroup)} and
+   * {@link StickyRecyclerHeadersAdapter#onBindHeaderViewHolder(RecyclerView.ViewHolder, int)} must be
+   * safe to call off the UI thread, and the header layout must not depend on views of the hierarchy.
+   *
+   * @param executor to create headers on, or null to create them synchronously
+   */
+  public void setAsyncExecutor(Executor executor) {
+    mAsyncExecutor = executor;
+    if (executor != null && mMainThreadHandler == null) {
+      mMainThreadHandler = new Handler(Looper.getMainLooper());
+    }
+  }
+
+  /**
+   * Shares the layout snapshot of a decoration, so that headers requested during one of its passes are
+   * measured against the layout it captured for the pass. Outside of a pass, the layout of the parent is
+   * read on each request.
+   *
+   * @param layoutSnapshot captured by the decoration at the start of each pass
+   */
+  public void setLayoutSnapshot(LayoutSnapshot layoutSnapshot) {
+    mLayoutSnapshot = layoutSnapshot;
+  }
+
+  public void setMetrics(StickyHeadersMetrics metrics) {
+    mMetrics = metrics;
+  }
+
+  public void setOnHeaderBoundListener(OnHeaderBoundListener listener) {
+    mOnHeaderBoundListener = listener;
+  }
+
+  /**
+   * @return the pool from which header ViewHolders are reused
+   */
+  public HeaderViewPool getHeaderViewPool() {
+    return mHeaderViewPool;
+  }
+
+  /**
+   * Replaces the pool from which header ViewHolders are reused, for example with a pool shared by several
+   * caches whose adapters create the same header layout. Headers cached at the time are released into the
+   * new pool once they are no longer needed.
+   *
+   * @param pool the pool to use
+   */
+  public void setHeaderViewPool(HeaderViewPool pool) {
+    mHeaderViewPool = pool;
+  }
+
+  /**
+   * Sets the maximum number of headers kept by this cache.
+   *
+   * @param maxHeaders maximum number of headers, or {@link Integer#MAX_VALUE} for no limit
+   */
+  public void setMaxHeaders(int maxHeaders) {
+    mMaxHeaders = maxHeaders;
+    trimToLimits();
+  }
+
+  /**
+   * Sets an approximate memory budget for this cache. The size of a header is estimated from its
+   * measured dimensions at 4 bytes per pixel.
+   *
+   * @param maxBytes approximate maximum number of bytes, or {@link Long#MAX_VALUE} for no limit
+   */
+  public void setMaxBytes(long maxBytes) {
+    mMaxBytes = maxBytes;
+    trimToLimits();
+  }
+
+  /**
+   * @return number of headers currently cached
+   */
+  public int size() {
+    return mHeaderViews.size();
+  }
+
+  /**
+   * @return approximate number of bytes retained by the cached headers
+   */
+  public long sizeBytes() {
+    return mBytes;
+  }
+
+  /**
+   * @return number of header lookups that were served from the cache
+   */
+  public int getHitCount() {
+    return mHitCount;
+  }
+
+  /**
+   * @return number of header lookups that required a header to be created
+   */
+  public int getMissCount() {
+    return mMissCount;
+  }
+
+  /**
+   * @return number of headers evicted to stay within the limits of the cache
+   */
+  public int getEvictionCount() {
+    return mEvictionCount;
+  }
+
+  /**
+   * Resets the hit, miss and eviction counters.
+   */
+  public void resetStats() {
+    mHitCount = 0;
+    mMissCount = 0;
+    mEvictionCount = 0;
+  }
+
+  private void markUsed(Entry entry) {
+    entry.mLastUsedFrame = mFrame;
+    if (entry.mPrevious != null) {
+      entry.mPrevious.mNext = entry.mNext;
+      entry.mNext.mPrevious = entry.mPrevious;
+    }
+    entry.mNext = mLruHead.mNext;
+    entry.mPrevious = mLruHead;
+    mLruHead.mNext.mPrevious = entry;
+    mLruHead.mNext = entry;
+  }
+
+  private void trimToLimits() {
+    Entry entry = mLruHead.mPrevious;
+    while (entry != mLruHead && (mHeaderViews.size() > mMaxHeaders || mBytes > mMaxBytes)) {
+      Entry previous = entry.mPrevious;
+      if (entry.mLastUsedFrame != mFrame) {
+        evict(entry);
+      }
+      entry = previous;
+    }
+  }
+
+  private void evict(Entry entry) {
+    remove(entry);
+    mEvictionCount++;
+  }
+
+  private void remove(Entry entry) {
+    entry.mPrevious.mNext = entry.mNext;
+    entry.mNext.mPrevious = entry.mPrevious;
+    entry.mPrevious = null;
+    entry.mNext = null;
+    mHeaderViews.remove(entry.mHeaderId);
+    mBytes -= entry.mBytes;
+    mHeaderViewPool.release(entry.mViewHolder);
+  }
+
+  /**
+   * A header being created on the background executor. Runs once on the executor, then once more on
+   * the UI thread to hand the header over to the cache.
+   */
+  private class PendingHeader implements Runnable {
+    final RecyclerView mParent;
+    final long mHeaderId;
+    final int mPosition;
+    final int mParentWidthSpec;
+    final int mParentHeightSpec;
+    final int mHorizontalPadding;
+    final int mVerticalPadding;
+    RecyclerView.ViewHolder mViewHolder;
+    boolean mCreated;
+    boolean mReady;
+
+    PendingHeader(RecyclerView parent, long headerId, int position, RecyclerView.ViewHolder viewHolder) {
+      mParent = parent;
+      mHeaderId = headerId;
+      mPosition = position;
+      mViewHolder = viewHolder;
+      mParentWidthSpec = HeaderViewCache.this.mParentWidthSpec;
+      mParentHeightSpec = HeaderViewCache.this.mParentHeightSpec;
+      mHorizontalPadding = HeaderViewCache.this.mHorizontalPadding;
+      mVerticalPadding = HeaderViewCache.this.mVerticalPadding;
+    }
+
+    @Override
+    public void run() {
+      if (mReady) {
+        onPendingHeaderReady(this);
+        return;
+      }
+      if (mViewHolder == null) {
+        mViewHolder = mAdapter.onCreateHeaderViewHolder(mParent);
+        mCreated = true;
+      }
+      mAdapter.onBindHeaderViewHolder(mViewHolder, mPosition);
+      measureHeader(mViewHolder.itemView, mParentWidthSpec, mParentHeightSpec, mHorizontalPadding,
+          mVerticalPadding);
+      mReady = true;
+      mMainThreadHandler.post(this);
+    }
+  }
+
+  /**
+   * Notified when a header view has been bound to a header id and measured, or re-measured after the
+   * parent was resized, which changes what it draws.
+   */
+  public interface OnHeaderBoundListener {
+    void onHeaderBound(View header);
+  }
+
+  /**
+   * A cached header, linked into the LRU list of the cache.
+   */
+  private static class Entry {
+    long mHeaderId;
+    RecyclerView.ViewHolder mViewHolder;
+    View mHeader;
+    int mParentWidthSpec;
+    int mParentHeightSpec;
+    int mHorizontalPadding;
+    int mVerticalPadding;
+    /**
+     * Offset of the first item of the section, or -1 until it is computed
+     */
+    int mItemOffset = -1;
+    long mContentKey;
+    /**
+     * True if the header was invalidated and has to be checked against its content key before it is used
+     */
+    boolean mStale;
+    /**
+     * True if the content of the header changed and it has to be bound again before it is used
+     */
+    boolean mDirty;
+    /**
+     * True if the header was prefetched and hasn't been requested since, which keeps it from being recycled
+     */
+    boolean mPrefetched;
+    long mBytes;
+    int mLastUsedFrame;
+    Entry mPrevious;
+    Entry mNext;
   }
 }
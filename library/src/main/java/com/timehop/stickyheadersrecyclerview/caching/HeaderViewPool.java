@@ -0,0 +1,66 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+
+/**
+ * Holds header ViewHolders that are no longer bound to a header id, so they can be rebound instead of
+ * creating new ones. Works like {@link RecyclerView.RecycledViewPool} for a single view type.
+ *
+ * A pool can be shared by the decorations of several RecyclerViews, see
+ * {@link com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersDecoration#setHeaderViewPool(HeaderViewPool)}.
+ * All of them must create the same header layout, and the pool must only be used from the UI thread.
+ */
+public class HeaderViewPool {
+
+  private static final int DEFAULT_MAX_RECYCLED_HEADERS = 5;
+
+  private final ArrayList<RecyclerView.ViewHolder> mScrap = new ArrayList<>();
+  private int mMaxRecycledHeaders = DEFAULT_MAX_RECYCLED_HEADERS;
+
+  /**
+   * @return a recycled header ViewHolder, or null if the pool is empty
+   */
+  public RecyclerView.ViewHolder acquire() {
+    int size = mScrap.size();
+    return size > 0 ? mScrap.remove(size - 1) : null;
+  }
+
+  /**
+   * Puts a header ViewHolder back into the pool. It is dropped if the pool is full.
+   *
+   * @param viewHolder the header ViewHolder that is no longer used
+   */
+  public void release(RecyclerView.ViewHolder viewHolder) {
+    if (mScrap.size() < mMaxRecycledHeaders) {
+      mScrap.add(viewHolder);
+    }
+  }
+
+  /**
+   * Sets the maximum number of header ViewHolders held by the pool.
+   *
+   * @param max maximum number of recycled headers
+   */
+  public void setMaxRecycledHeaders(int max) {
+    mMaxRecycledHeaders = max;
+    while (mScrap.size() > max) {
+      mScrap.remove(mScrap.size() - 1);
+    }
+  }
+
+  /**
+   * @return number of header ViewHolders currently in the pool
+   */
+  public int size() {
+    return mScrap.size();
+  }
+
+  /**
+   * Drops all recycled header ViewHolders.
+   */
+  public void clear() {
+    mScrap.clear();
+  }
+}
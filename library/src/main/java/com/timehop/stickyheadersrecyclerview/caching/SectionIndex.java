@@ -0,0 +1,406 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import android.support.v7.widget.RecyclerView;
+
+import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter;
+import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersBatchAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A run-length table of the sections of a {@link StickyRecyclerHeadersAdapter}. Each section is
+ * stored as a (start position, header id) pair, so looking up the section of a position is a
+ * binary search and does not call into the adapter.
+ *
+ * The table is built lazily the first time it is queried and is then kept up to date from the
+ * range events it receives as a {@link RecyclerView.AdapterDataObserver}. Adapters that change
+ * their data without notifying their observers will leave the index stale.
+ *
+ * While disabled, {@link #getHeaderId(int)} simply delegates to the adapter, or reads from a window of
+ * header ids loaded with {@link #loadWindow(int, int)}.
+ *
+ * If the adapter implements {@link StickyRecyclerHeadersBatchAdapter}, header ids are read from it in
+ * batches.
+ */
+public class SectionIndex extends RecyclerView.AdapterDataObserver {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int BATCH_SIZE = 256;
+
+  private final StickyRecyclerHeadersAdapter mAdapter;
+  private final StickyRecyclerHeadersBatchAdapter mBatchAdapter;
+  private long[] mBatch;
+
+  /**
+   * Section starts and header ids, sorted by start position. The spare arrays are the target of
+   * incremental updates and are swapped with the live ones once an update is complete.
+   */
+  private int[] mSectionStarts = new int[INITIAL_CAPACITY];
+  private long[] mHeaderIds = new long[INITIAL_CAPACITY];
+  private int[] mSpareSectionStarts = new int[INITIAL_CAPACITY];
+  private long[] mSpareHeaderIds = new long[INITIAL_CAPACITY];
+  private int mSectionCount;
+  private int mSpareSectionCount;
+  private int mItemCount;
+
+  private boolean mEnabled;
+  private boolean mValid;
+  private int mAdapterLookupCount;
+  private final List<RecyclerView.AdapterDataObserver> mUpdateObservers = new ArrayList<>();
+
+  /**
+   * Header ids of [mWindowStart, mWindowStart + mWindowCount), read in one batch while the index is disabled.
+   */
+  private long[] mWindow;
+  private int mWindowStart;
+  private int mWindowCount;
+
+  public SectionIndex(StickyRecyclerHeadersAdapter adapter) {
+    mAdapter = adapter;
+    mBatchAdapter = adapter instanceof StickyRecyclerHeadersBatchAdapter
+        ? (StickyRecyclerHeadersBatchAdapter) adapter : null;
+  }
+
+  public boolean isEnabled() {
+    return mEnabled;
+  }
+
+  /**
+   * Enables or disables the index. The table is dropped when the index is disabled, and rebuilt on
+   * first use once it is enabled again.
+   *
+   * @param enabled true if lookups should be answered from the table
+   */
+  public void setEnabled(boolean enabled) {
+    mEnabled = enabled;
+    invalidate();
+  }
+
+  /**
+   * Drops the table. It will be rebuilt from the adapter the next time it is queried.
+   */
+  public void invalidate() {
+    mValid = false;
+    mSectionCount = 0;
+    mItemCount = 0;
+  }
+
+  /**
+   * @param position of the list item
+   * @return the header id of the item, taken from the table if the index is enabled
+   * @throws IndexOutOfBoundsException if the index is enabled and the position is negative or the table is
+   * empty
+   */
+  public long getHeaderId(int position) {
+    if (!mEnabled) {
+      int windowIndex = position - mWindowStart;
+      if (windowIndex >= 0 && windowIndex < mWindowCount) {
+        return mWindow[windowIndex];
+      }
+      mAdapterLookupCount++;
+      return mAdapter.getHeaderId(position);
+    }
+    // Looked up before the array is read, since building the table swaps the arrays
+    int section = getSectionForPositionOrThrow(position);
+    return mHeaderIds[section];
+  }
+
+  /**
+   * @return the number of items covered by the table
+   */
+  public int getItemCount() {
+    ensureValid();
+    return mItemCount;
+  }
+
+  /**
+   * @return the number of runs of consecutive items sharing a header id
+   */
+  public int getSectionCount() {
+    ensureValid();
+    return mSectionCount;
+  }
+
+  /**
+   * @param position of the list item
+   * @return index of the section containing the item, or -1 if the position is negative or the table is
+   * empty. Positions past the last item map to the last section.
+   */
+  public int getSectionForPosition(int position) {
+    ensureValid();
+    int index = Arrays.binarySearch(mSectionStarts, 0, mSectionCount, position);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * @param section index of the section
+   * @return position of the first item of the section
+   */
+  public int getPositionForSection(int section) {
+    ensureValid();
+    return mSectionStarts[section];
+  }
+
+  /**
+   * @param section index of the section
+   * @return position of the last item of the section
+   */
+  public int getLastPositionForSection(int section) {
+    ensureValid();
+    return section + 1 < mSectionCount ? mSectionStarts[section + 1] - 1 : mItemCount - 1;
+  }
+
+  /**
+   * @param section index of the section
+   * @return header id shared by all items of the section
+   */
+  public long getHeaderIdForSection(int section) {
+    ensureValid();
+    return mHeaderIds[section];
+  }
+
+  /**
+   * @param position of the list item
+   * @return true if the item is the first one of its section
+   * @throws IndexOutOfBoundsException if the position is negative or the table is empty
+   */
+  public boolean isSectionStart(int position) {
+    int section = getSectionForPositionOrThrow(position);
+    return mSectionStarts[section] == position;
+  }
+
+  /**
+   * @param position of the list item
+   * @return true if the item is the last one of its section
+   * @throws IndexOutOfBoundsException if the position is negative or the table is empty
+   */
+  public boolean isSectionEnd(int position) {
+    int section = getSectionForPositionOrThrow(position);
+    int nextStart = section + 1 < mSectionCount ? mSectionStarts[section + 1] : mItemCount;
+    return nextStart - 1 == position;
+  }
+
+  /**
+   * @return true if header ids can be read from the adapter in batches
+   */
+  public boolean isBatchAdapter() {
+    return mBatchAdapter != null;
+  }
+
+  /**
+   * Reads the header ids of a range of positions from the adapter in one batch, and answers
+   * {@link #getHeaderId(int)} for those positions from them until {@link #clearWindow()} is called.
+   * Does nothing if the index is enabled or the adapter can't read header ids in batches. The window
+   * is not updated by change notifications, so it should only be kept for the duration of a frame.
+   *
+   * @param start first position of the window, clamped to the positions of the adapter
+   * @param count number of positions in the window
+   */
+  public void loadWindow(int start, int count) {
+    mWindowCount = 0;
+    if (mEnabled || mBatchAdapter == null) {
+      return;
+    }
+    int end = Math.min(start + count, mAdapter.getItemCount());
+    start = Math.max(start, 0);
+    if (end <= start) {
+      return;
+    }
+    if (mWindow == null || mWindow.length < end - start) {
+      mWindow = new long[Math.max(end - start, INITIAL_CAPACITY)];
+    }
+    mBatchAdapter.getHeaderIds(start, end - start, mWindow);
+    mAdapterLookupCount++;
+    mWindowStart = start;
+    mWindowCount = end - start;
+  }
+
+  /**
+   * Drops the window loaded by {@link #loadWindow(int, int)}.
+   */
+  public void clearWindow() {
+    mWindowCount = 0;
+  }
+
+  /**
+   * Adds an observer that receives each change notification once the table has been updated with it.
+   * Adapters notify their observers in reverse registration order, so an observer that reads the table
+   * can't rely on being notified after the index. Update observers are notified in the order they were
+   * added.
+   *
+   * @param observer to notify after each update
+   */
+  public void addUpdateObserver(RecyclerView.AdapterDataObserver observer) {
+    mUpdateObservers.add(observer);
+  }
+
+  /**
+   * @param observer to stop notifying
+   */
+  public void removeUpdateObserver(RecyclerView.AdapterDataObserver observer) {
+    mUpdateObservers.remove(observer);
+  }
+
+  /**
+   * @return total number of calls made to {@link StickyRecyclerHeadersAdapter#getHeaderId(int)} and
+   * {@link StickyRecyclerHeadersBatchAdapter#getHeaderIds(int, int, long[])} through this index, including
+   * calls made while building or updating the table
+   */
+  public int getAdapterLookupCount() {
+    return mAdapterLookupCount;
+  }
+
+  @Override
+  public void onChanged() {
+    invalidate();
+    for (int i = 0; i < mUpdateObservers.size(); i++) {
+      mUpdateObservers.get(i).onChanged();
+    }
+  }
+
+  @Override
+  public void onItemRangeChanged(int positionStart, int itemCount) {
+    replaceRange(positionStart, itemCount, itemCount);
+    for (int i = 0; i < mUpdateObservers.size(); i++) {
+      mUpdateObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+    }
+  }
+
+  @Override
+  public void onItemRangeInserted(int positionStart, int itemCount) {
+    replaceRange(positionStart, 0, itemCount);
+    for (int i = 0; i < mUpdateObservers.size(); i++) {
+      mUpdateObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+    }
+  }
+
+  @Override
+  public void onItemRangeRemoved(int positionStart, int itemCount) {
+    replaceRange(positionStart, itemCount, 0);
+    for (int i = 0; i < mUpdateObservers.size(); i++) {
+      mUpdateObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+    }
+  }
+
+  @Override
+  public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+    replaceRange(fromPosition, itemCount, 0);
+    replaceRange(toPosition, 0, itemCount);
+    for (int i = 0; i < mUpdateObservers.size(); i++) {
+      mUpdateObservers.get(i).onItemRangeMoved(fromPosition, toPosition, itemCount);
+    }
+  }
+
+  private int getSectionForPositionOrThrow(int position) {
+    int section = getSectionForPosition(position);
+    if (section < 0) {
+      throw new IndexOutOfBoundsException("Position " + position + " is not in the index of "
+          + mItemCount + " items");
+    }
+    return section;
+  }
+
+  private void ensureValid() {
+    if (mValid) {
+      return;
+    }
+    mSpareSectionCount = 0;
+    int itemCount = mAdapter.getItemCount();
+    ensureSpareCapacity(INITIAL_CAPACITY);
+    appendSpareRange(0, itemCount);
+    swapTables(itemCount);
+    mValid = true;
+  }
+
+  /**
+   * Replaces the items in [start, start + removedCount) of the table with insertedCount items read
+   * from the adapter, merging the new runs with their neighbours. Costs O(sections + insertedCount)
+   * and only queries the adapter for the inserted items.
+   */
+  private void replaceRange(int start, int removedCount, int insertedCount) {
+    if (!mValid) {
+      // Nothing to update, the table will be built from scratch when it is first queried
+      return;
+    }
+    int end = start + removedCount;
+    if (start < 0 || end > mItemCount) {
+      invalidate();
+      return;
+    }
+
+    int prefixCount = Arrays.binarySearch(mSectionStarts, 0, mSectionCount, start);
+    prefixCount = prefixCount >= 0 ? prefixCount : -prefixCount - 1;
+    int suffixFirst = end < mItemCount ? getSectionForPosition(end) : mSectionCount;
+    int delta = insertedCount - removedCount;
+
+    mSpareSectionCount = 0;
+    ensureSpareCapacity(prefixCount + insertedCount + mSectionCount - suffixFirst);
+    for (int i = 0; i < prefixCount; i++) {
+      appendSpareSection(mSectionStarts[i], mHeaderIds[i]);
+    }
+    appendSpareRange(start, insertedCount);
+    for (int i = suffixFirst; i < mSectionCount; i++) {
+      appendSpareSection(Math.max(mSectionStarts[i], end) + delta, mHeaderIds[i]);
+    }
+    swapTables(mItemCount + delta);
+  }
+
+  /**
+   * Reads the header ids of a range of positions from the adapter and appends them to the spare table.
+   */
+  private void appendSpareRange(int start, int count) {
+    if (mBatchAdapter == null) {
+      for (int position = start; position < start + count; position++) {
+        appendSpareSection(position, mAdapter.getHeaderId(position));
+      }
+      mAdapterLookupCount += count;
+      return;
+    }
+
+    if (mBatch == null) {
+      mBatch = new long[BATCH_SIZE];
+    }
+    for (int batchStart = start; batchStart < start + count; batchStart += BATCH_SIZE) {
+      int batchCount = Math.min(BATCH_SIZE, start + count - batchStart);
+      mBatchAdapter.getHeaderIds(batchStart, batchCount, mBatch);
+      mAdapterLookupCount++;
+      for (int i = 0; i < batchCount; i++) {
+        appendSpareSection(batchStart + i, mBatch[i]);
+      }
+    }
+  }
+
+  private void appendSpareSection(int start, long headerId) {
+    if (mSpareSectionCount > 0 && mSpareHeaderIds[mSpareSectionCount - 1] == headerId) {
+      // Same header as the previous run, so the item belongs to that section
+      return;
+    }
+    ensureSpareCapacity(mSpareSectionCount + 1);
+    mSpareSectionStarts[mSpareSectionCount] = start;
+    mSpareHeaderIds[mSpareSectionCount] = headerId;
+    mSpareSectionCount++;
+  }
+
+  private void ensureSpareCapacity(int capacity) {
+    if (mSpareSectionStarts.length >= capacity) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, mSpareSectionStarts.length * 2);
+    mSpareSectionStarts = Arrays.copyOf(mSpareSectionStarts, newCapacity);
+    mSpareHeaderIds = Arrays.copyOf(mSpareHeaderIds, newCapacity);
+  }
+
+  private void swapTables(int itemCount) {
+    int[] starts = mSectionStarts;
+    long[] headerIds = mHeaderIds;
+    mSectionStarts = mSpareSectionStarts;
+    mHeaderIds = mSpareHeaderIds;
+    mSectionCount = mSpareSectionCount;
+    mSpareSectionStarts = starts;
+    mSpareHeaderIds = headerIds;
+    mSpareSectionCount = 0;
+    mItemCount = itemCount;
+  }
+}
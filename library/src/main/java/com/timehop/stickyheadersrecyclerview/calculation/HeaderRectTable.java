@@ -0,0 +1,89 @@
+package com.timehop.stickyheadersrecyclerview.calculation;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Holds the bounds of the headers drawn during a frame, together with the adapter position each header
+ * was drawn for. Entries are stored in primitive arrays that are reused from frame to frame, so once
+ * the table has grown to the number of headers on screen, recording a frame allocates nothing.
+ */
+public class HeaderRectTable {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private int[] mPositions = new int[INITIAL_CAPACITY];
+  /**
+   * left, top, right and bottom of each entry, stored consecutively
+   */
+  private int[] mBounds = new int[INITIAL_CAPACITY * 4];
+  private int mSize;
+
+  /**
+   * Removes all entries, keeping the allocated capacity.
+   */
+  public void clear() {
+    mSize = 0;
+  }
+
+  /**
+   * Records the bounds of a header.
+   *
+   * @param position adapter position the header was drawn for
+   * @param bounds   of the header
+   */
+  public void add(int position, Rect bounds) {
+    if (mSize == mPositions.length) {
+      mPositions = Arrays.copyOf(mPositions, mSize * 2);
+      mBounds = Arrays.copyOf(mBounds, mSize * 2 * 4);
+    }
+    mPositions[mSize] = position;
+    int offset = mSize * 4;
+    mBounds[offset] = bounds.left;
+    mBounds[offset + 1] = bounds.top;
+    mBounds[offset + 2] = bounds.right;
+    mBounds[offset + 3] = bounds.bottom;
+    mSize++;
+  }
+
+  /**
+   * @return number of headers recorded
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @param index of the entry, in the order headers were recorded
+   * @return adapter position the header was drawn for
+   */
+  public int getPosition(int index) {
+    return mPositions[index];
+  }
+
+  /**
+   * @param index of the entry, in the order headers were recorded
+   * @param bounds rect to populate with the bounds of the header
+   */
+  public void getBounds(int index, Rect bounds) {
+    int offset = index * 4;
+    bounds.set(mBounds[offset], mBounds[offset + 1], mBounds[offset + 2], mBounds[offset + 3]);
+  }
+
+  /**
+   * @param index of the entry, in the order headers were recorded
+   * @param x     x-coordinate
+   * @param y     y-coordinate
+   * @return true if the bounds of the header contain the point, following the semantics of
+   * {@link Rect#contains(int, int)}
+   */
+  public boolean contains(int index, int x, int y) {
+    int offset = index * 4;
+    int left = mBounds[offset];
+    int top = mBounds[offset + 1];
+    int right = mBounds[offset + 2];
+    int bottom = mBounds[offset + 3];
+    return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+  }
+}
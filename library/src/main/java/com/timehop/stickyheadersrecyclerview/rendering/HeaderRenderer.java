@@ -2,11 +2,12 @@ package com.timehop.stickyheadersrecyclerview.rendering;
 
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.support.v4.util.SimpleArrayMap;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import android.widget.LinearLayout;
 
 import com.timehop.stickyheadersrecyclerview.calculation.DimensionCalculator;
+import com.timehop.stickyheadersrecyclerview.util.LayoutSnapshot;
 import com.timehop.stickyheadersrecyclerview.util.OrientationProvider;
 
 /**
@@ -22,6 +23,14 @@ public class HeaderRenderer {
    * allocating new Rect every time we need one.
    */
   private final Rect mTempRect = new Rect();
+  private final LayoutSnapshot mLayoutSnapshot = new LayoutSnapshot();
+
+  /**
+   * Recordings of the headers drawn during the last frame, keyed by header view.
+   */
+  private final SimpleArrayMap<View, HeaderSnapshot> mSnapshots = new SimpleArrayMap<>();
+  private boolean mSnapshotsEnabled;
+  private int mFrame;
 
   public HeaderRenderer(OrientationProvider orientationProvider) {
     this(orientationProvider, new DimensionCalculator());
@@ -43,20 +52,103 @@ public class HeaderRenderer {
    *                     the {@link Rect#left} and {@link Rect#top} properties, respectively.
    */
   public void drawHeader(RecyclerView recyclerView, Canvas canvas, View header, Rect offset) {
+    mLayoutSnapshot.capture(recyclerView, mOrientationProvider);
+    drawHeader(mLayoutSnapshot, canvas, header, offset);
+  }
+
+  /**
+   * Draws a header to a canvas, offsetting by some x and y amount
+   *
+   * @param layout       snapshot of the parent recycler view for drawing the header into
+   * @param canvas       the canvas on which to draw the header
+   * @param header       the view to draw as the header
+   * @param offset       a Rect used to define the x/y offset of the header. Specify x/y offset by setting
+   *                     the {@link Rect#left} and {@link Rect#top} properties, respectively.
+   */
+  public void drawHeader(LayoutSnapshot layout, Canvas canvas, View header, Rect offset) {
     canvas.save();
 
-    if (recyclerView.getLayoutManager().getClipToPadding()) {
+    if (layout.getClipToPadding()) {
       // Clip drawing of headers to the padding of the RecyclerView. Avoids drawing in the padding
-      initClipRectForHeader(mTempRect, recyclerView, header);
+      initClipRectForHeader(mTempRect, layout, header);
       canvas.clipRect(mTempRect);
     }
 
     canvas.translate(offset.left, offset.top);
 
-    header.draw(canvas);
+    if (mSnapshotsEnabled && header.getWidth() > 0 && header.getHeight() > 0) {
+      drawSnapshot(canvas, header);
+    } else {
+      header.draw(canvas);
+    }
     canvas.restore();
   }
 
+  private void drawSnapshot(Canvas canvas, View header) {
+    HeaderSnapshot snapshot = mSnapshots.get(header);
+    if (snapshot == null) {
+      snapshot = new HeaderSnapshot();
+      mSnapshots.put(header, snapshot);
+    }
+    if (!snapshot.isValidFor(header)) {
+      snapshot.record(header, canvas);
+    }
+    snapshot.mLastDrawnFrame = mFrame;
+    snapshot.draw(canvas);
+  }
+
+  /**
+   * Enables or disables snapshot rendering. When enabled, each header is recorded once and the
+   * recording is replayed on later frames instead of calling {@link View#draw(Canvas)}. Recordings
+   * must be invalidated with {@link #invalidateSnapshot(View)} whenever a header is rebound.
+   * They are dropped automatically when the size of the header changes.
+   *
+   * @param enabled true to draw headers from snapshots
+   */
+  public void setSnapshotsEnabled(boolean enabled) {
+    mSnapshotsEnabled = enabled;
+    if (!enabled) {
+      invalidateSnapshots();
+    }
+  }
+
+  /**
+   * Marks the start of a new frame, releasing the snapshots of headers that were not drawn during
+   * the previous one.
+   */
+  public void startFrame() {
+    for (int i = mSnapshots.size() - 1; i >= 0; i--) {
+      HeaderSnapshot snapshot = mSnapshots.valueAt(i);
+      if (snapshot.mLastDrawnFrame != mFrame) {
+        snapshot.release();
+        mSnapshots.removeAt(i);
+      }
+    }
+    mFrame++;
+  }
+
+  /**
+   * Drops the recording of a header, so that it is recorded again the next time it is drawn.
+   *
+   * @param header the header that was rebound or re-measured
+   */
+  public void invalidateSnapshot(View header) {
+    HeaderSnapshot snapshot = mSnapshots.remove(header);
+    if (snapshot != null) {
+      snapshot.release();
+    }
+  }
+
+  /**
+   * Drops all header recordings.
+   */
+  public void invalidateSnapshots() {
+    for (int i = 0; i < mSnapshots.size(); i++) {
+      mSnapshots.valueAt(i).release();
+    }
+    mSnapshots.clear();
+  }
+
   /**
    * Initializes a clipping rect for the header based on the margins of the header and the padding of the
    * recycler.
@@ -65,23 +157,23 @@ public class HeaderRenderer {
    * correctly smaller width and height respectively.
    *
    * @param clipRect {@link Rect} for clipping a provided header to the padding of a recycler view
-   * @param recyclerView for which to provide a header
-   * @param header       for clipping
+   * @param layout   snapshot of the recycler view for which to provide a header
+   * @param header   for clipping
    */
-  private void initClipRectForHeader(Rect clipRect, RecyclerView recyclerView, View header) {
+  private void initClipRectForHeader(Rect clipRect, LayoutSnapshot layout, View header) {
     mDimensionCalculator.initMargins(clipRect, header);
-    if (mOrientationProvider.getOrientation(recyclerView) == LinearLayout.VERTICAL) {
+    if (layout.isVertical()) {
       clipRect.set(
-          recyclerView.getPaddingLeft(),
-          recyclerView.getPaddingTop(),
-          recyclerView.getWidth() - recyclerView.getPaddingRight() - clipRect.right,
-          recyclerView.getHeight() - recyclerView.getPaddingBottom());
+          layout.getPaddingLeft(),
+          layout.getPaddingTop(),
+          layout.getWidth() - layout.getPaddingRight() - clipRect.right,
+          layout.getHeight() - layout.getPaddingBottom());
     } else {
         clipRect.set(
-          recyclerView.getPaddingLeft(),
-          recyclerView.getPaddingTop(),
-          recyclerView.getWidth() - recyclerView.getPaddingRight(),
-          recyclerView.getHeight() - recyclerView.getPaddingBottom() - clipRect.bottom);
+          layout.getPaddingLeft(),
+          layout.getPaddingTop(),
+          layout.getWidth() - layout.getPaddingRight(),
+          layout.getHeight() - layout.getPaddingBottom() - clipRect.bottom);
     }
   }
 
@@ -0,0 +1,85 @@
+package com.timehop.stickyheadersrecyclerview.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Picture;
+import android.os.Build;
+import android.view.View;
+
+/**
+ * A recording of a header view that can be replayed instead of running the header's draw traversal.
+ * Uses a {@link Picture} on hardware accelerated canvases where the platform supports replaying
+ * pictures (API 23+), and a {@link Bitmap} otherwise.
+ */
+class HeaderSnapshot {
+
+  private Picture mPicture;
+  private Bitmap mBitmap;
+  private Canvas mBitmapCanvas;
+  private int mWidth;
+  private int mHeight;
+  private boolean mRecorded;
+  int mLastDrawnFrame;
+
+  /**
+   * @param header the header view
+   * @return true if this snapshot holds a recording of the header at its current size
+   */
+  boolean isValidFor(View header) {
+    return mRecorded && mWidth == header.getWidth() && mHeight == header.getHeight();
+  }
+
+  /**
+   * Records the header, reusing the previous picture or bitmap where possible.
+   *
+   * @param header the header view to record
+   * @param target the canvas the snapshot will be drawn on
+   */
+  void record(View header, Canvas target) {
+    mWidth = header.getWidth();
+    mHeight = header.getHeight();
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && target.isHardwareAccelerated()) {
+      releaseBitmap();
+      if (mPicture == null) {
+        mPicture = new Picture();
+      }
+      Canvas canvas = mPicture.beginRecording(mWidth, mHeight);
+      header.draw(canvas);
+      mPicture.endRecording();
+    } else {
+      mPicture = null;
+      if (mBitmap == null || mBitmap.getWidth() != mWidth || mBitmap.getHeight() != mHeight) {
+        releaseBitmap();
+        mBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        mBitmapCanvas = new Canvas(mBitmap);
+      } else {
+        mBitmap.eraseColor(Color.TRANSPARENT);
+      }
+      header.draw(mBitmapCanvas);
+    }
+    mRecorded = true;
+  }
+
+  void draw(Canvas canvas) {
+    if (mPicture != null) {
+      canvas.drawPicture(mPicture);
+    } else {
+      canvas.drawBitmap(mBitmap, 0, 0, null);
+    }
+  }
+
+  void release() {
+    mPicture = null;
+    releaseBitmap();
+    mRecorded = false;
+  }
+
+  private void releaseBitmap() {
+    if (mBitmap != null) {
+      mBitmap.recycle();
+      mBitmap = null;
+      mBitmapCanvas = null;
+    }
+  }
+}
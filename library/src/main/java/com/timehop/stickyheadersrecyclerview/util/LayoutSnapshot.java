@@ -0,0 +1,140 @@
+package com.timehop.stickyheadersrecyclerview.util;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The layout properties of a RecyclerView that stay constant during a draw or layout pass. Capturing
+ * them once per pass saves repeated LayoutManager lookups for every child.
+ */
+public class LayoutSnapshot {
+
+  /**
+   * LayoutManager of the RecyclerView captured last, or null if the snapshot was invalidated since
+   */
+  private RecyclerView.LayoutManager mLayoutManager;
+  private int mOrientation;
+  private boolean mReverseLayout;
+  private boolean mClipToPadding;
+  private int mWidth;
+  private int mHeight;
+  private int mPaddingLeft;
+  private int mPaddingTop;
+  private int mPaddingRight;
+  private int mPaddingBottom;
+
+  /**
+   * Reads the current layout properties of the RecyclerView.
+   *
+   * @param recyclerView        to capture
+   * @param orientationProvider used to read the orientation and reverse layout flag
+   */
+  public void capture(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+    mLayoutManager = recyclerView.getLayoutManager();
+    mOrientation = orientationProvider.getOrientation(recyclerView);
+    mReverseLayout = orientationProvider.isReverseLayout(recyclerView);
+    mClipToPadding = mLayoutManager.getClipToPadding();
+    mWidth = recyclerView.getWidth();
+    mHeight = recyclerView.getHeight();
+    mPaddingLeft = recyclerView.getPaddingLeft();
+    mPaddingTop = recyclerView.getPaddingTop();
+    mPaddingRight = recyclerView.getPaddingRight();
+    mPaddingBottom = recyclerView.getPaddingBottom();
+  }
+
+  /**
+   * Captures the layout properties of the RecyclerView unless they were already captured during the
+   * current pass, that is since the last call to {@link #invalidate()}, and for its current LayoutManager.
+   *
+   * @param recyclerView        to capture
+   * @param orientationProvider used to read the orientation and reverse layout flag
+   */
+  public void captureIfNeeded(RecyclerView recyclerView, OrientationProvider orientationProvider) {
+    if (!isCaptured(recyclerView)) {
+      capture(recyclerView, orientationProvider);
+    }
+  }
+
+  /**
+   * @param recyclerView to check
+   * @return true if the snapshot holds the layout properties of the RecyclerView for the current pass
+   */
+  public boolean isCaptured(RecyclerView recyclerView) {
+    return mLayoutManager != null && mLayoutManager == recyclerView.getLayoutManager();
+  }
+
+  /**
+   * Marks the end of a pass, so that the properties are captured again at the start of the next one.
+   */
+  public void invalidate() {
+    mLayoutManager = null;
+  }
+
+  public int getOrientation() {
+    return mOrientation;
+  }
+
+  public boolean isVertical() {
+    return mOrientation == LinearLayoutManager.VERTICAL;
+  }
+
+  public boolean isReverseLayout() {
+    return mReverseLayout;
+  }
+
+  public boolean getClipToPadding() {
+    return mClipToPadding;
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  public int getHeight() {
+    return mHeight;
+  }
+
+  public int getPaddingLeft() {
+    return mPaddingLeft;
+  }
+
+  public int getPaddingTop() {
+    return mPaddingTop;
+  }
+
+  public int getPaddingRight() {
+    return mPaddingRight;
+  }
+
+  public int getPaddingBottom() {
+    return mPaddingBottom;
+  }
+
+  /**
+   * @return top edge of the area in which list items are visible
+   */
+  public int getListTop() {
+    return mClipToPadding ? mPaddingTop : 0;
+  }
+
+  /**
+   * @return left edge of the area in which list items are visible
+   */
+  public int getListLeft() {
+    return mClipToPadding ? mPaddingLeft : 0;
+  }
+
+  /**
+   * @return bottom edge of the area in which list items are visible
+   */
+  public int getListBottom() {
+    return mClipToPadding ? mHeight - mPaddingBottom : mHeight;
+  }
+
+  /**
+   * @return right edge of the area in which list items are visible
+   */
+  public int getListRight() {
+    return mClipToPadding ? mWidth - mPaddingRight : mWidth;
+  }
+}
@@ -0,0 +1,161 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.LinearLayoutManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the work done by the decoration while a list is scrolled frame by frame, in every orientation
+ * of a {@link LinearLayoutManager}. Each frame goes through {@code getItemOffsets} and {@code onDrawOver},
+ * which find the sections and position the headers. The counts are asserted rather than timed, since they
+ * don't depend on the machine.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class DecorationBenchmarkTest {
+
+  private static final int ITEM_COUNT = 1000;
+  private static final int ITEMS_PER_SECTION = 10;
+  private static final int ITEM_SIZE = 100;
+  private static final int HEADER_SIZE = 50;
+  private static final int FRAMES_PER_SWEEP = 100;
+  private static final int SCROLL_PER_FRAME = 15;
+
+  /**
+   * A handful of header ids per laid out item: whether it starts a section, its offset and the push-off
+   */
+  private static final int MAX_LOOKUPS_PER_FRAME =
+      4 * (Math.max(FrameScroller.WIDTH, FrameScroller.HEIGHT) / ITEM_SIZE + 2);
+
+  @Test
+  public void vertical() {
+    assertFrameCosts(LinearLayoutManager.VERTICAL, false);
+  }
+
+  @Test
+  public void verticalReversed() {
+    assertFrameCosts(LinearLayoutManager.VERTICAL, true);
+  }
+
+  @Test
+  public void horizontal() {
+    assertFrameCosts(LinearLayoutManager.HORIZONTAL, false);
+  }
+
+  @Test
+  public void horizontalReversed() {
+    assertFrameCosts(LinearLayoutManager.HORIZONTAL, true);
+  }
+
+  private static void assertFrameCosts(int orientation, boolean reverseLayout) {
+    // With the section index, scrolling over cached headers costs no lookups, creations or measures
+    FrameRecorder indexed = scroll(orientation, reverseLayout, true, ITEM_COUNT);
+    assertDrawnFrames(indexed);
+    assertEquals(0, indexed.mMaxLookups);
+    assertEquals(0, indexed.mCreations);
+    assertEquals(0, indexed.mMeasures);
+
+    // Without it, lookups depend on the laid out items, not on the number of items
+    FrameRecorder unindexed = scroll(orientation, reverseLayout, false, ITEM_COUNT);
+    FrameRecorder unindexedLong = scroll(orientation, reverseLayout, false, 100 * ITEM_COUNT);
+    assertDrawnFrames(unindexed);
+    assertDrawnFrames(unindexedLong);
+    assertTrue(unindexed.mMaxLookups + " lookups", unindexed.mMaxLookups <= MAX_LOOKUPS_PER_FRAME);
+    assertTrue(unindexedLong.mMaxLookups + " lookups", unindexedLong.mMaxLookups <= unindexed.mMaxLookups);
+    assertEquals(0, unindexed.mCreations);
+    assertEquals(0, unindexed.mMeasures);
+  }
+
+  private static void assertDrawnFrames(FrameRecorder recorder) {
+    assertEquals(2 * 2 * FRAMES_PER_SWEEP + 1, recorder.mFrames);
+    // The sticky header is drawn on every frame
+    assertTrue(recorder.mMinHeadersDrawn >= 1);
+    assertTrue(recorder.mItemOffsetsNanos > 0);
+  }
+
+  /**
+   * Scrolls back and forth from the middle of the list, once to create the headers of the scrolled range
+   * and then twice while recording.
+   */
+  private static FrameRecorder scroll(int orientation, boolean reverseLayout, boolean indexed, int itemCount) {
+    FrameScroller scroller = new FrameScroller(orientation, reverseLayout, itemCount, ITEMS_PER_SECTION, ITEM_SIZE,
+        HEADER_SIZE);
+    scroller.decoration.setSectionIndexEnabled(indexed);
+    FrameRecorder recorder = new FrameRecorder();
+    scroller.decoration.setMetrics(recorder);
+    scroller.scrollToPosition(itemCount / 2);
+    scroller.sweep(1, FRAMES_PER_SWEEP, SCROLL_PER_FRAME);
+    recorder.reset();
+    scroller.sweep(2, FRAMES_PER_SWEEP, SCROLL_PER_FRAME);
+    return recorder;
+  }
+
+  /**
+   * Records the highest number of lookups made in a frame, and the work summed over all frames.
+   */
+  private static class FrameRecorder implements StickyHeadersMetrics {
+    int mFrames;
+    int mMaxLookups;
+    int mMinHeadersDrawn;
+    int mCreations;
+    int mMeasures;
+    long mItemOffsetsNanos;
+
+    FrameRecorder() {
+      reset();
+    }
+
+    void reset() {
+      mFrames = 0;
+      mMaxLookups = 0;
+      mMinHeadersDrawn = Integer.MAX_VALUE;
+      mCreations = 0;
+      mMeasures = 0;
+      mItemOffsetsNanos = 0;
+    }
+
+    @Override
+    public void onFrame(long drawOverNanos, long itemOffsetsNanos, int headersDrawn, int headerIdLookups) {
+      mFrames++;
+      mMaxLookups = Math.max(mMaxLookups, headerIdLookups);
+      mMinHeadersDrawn = Math.min(mMinHeadersDrawn, headersDrawn);
+      mItemOffsetsNanos += itemOffsetsNanos;
+    }
+
+    @Override
+    public void onPassStarted() {
+    }
+
+    @Override
+    public void onPassFinished() {
+    }
+
+    @Override
+    public void onHeaderCacheHit() {
+    }
+
+    @Override
+    public void onHeaderCacheMiss() {
+    }
+
+    @Override
+    public void onHeaderCreated() {
+      mCreations++;
+    }
+
+    @Override
+    public void onHeaderBound() {
+    }
+
+    @Override
+    public void onHeaderMeasured() {
+      mMeasures++;
+    }
+  }
+}
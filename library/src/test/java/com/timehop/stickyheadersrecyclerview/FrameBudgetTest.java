@@ -0,0 +1,122 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.LinearLayoutManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Scrolls a list back and forth over a few sections, laying out and drawing every frame, and fails when
+ * the decoration goes over the budgets of {@link FrameBudgetMetrics}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class FrameBudgetTest {
+
+  private static final int ITEM_SIZE = 100;
+  private static final int ITEM_COUNT = 1000;
+  private static final int ITEMS_PER_SECTION = 10;
+  private static final int FRAMES_PER_SWEEP = 100;
+  private static final int SCROLL_PER_FRAME = 15;
+
+  private FrameScroller mScroller;
+  private FrameBudgetMetrics mBudget;
+
+  @Before
+  public void setUp() {
+    mScroller = new FrameScroller(LinearLayoutManager.VERTICAL, false, ITEM_COUNT, ITEMS_PER_SECTION, ITEM_SIZE,
+        ITEM_SIZE / 2);
+    mBudget = new JvmFrameBudgetMetrics();
+    mScroller.decoration.setMetrics(mBudget);
+    // Starts in the middle of the list, so that both sweeps cross section boundaries
+    mScroller.scrollToPosition(ITEM_COUNT / 2);
+  }
+
+  @After
+  public void tearDown() {
+    mBudget.stopAllocationCounting();
+  }
+
+  @Test
+  public void indexedScrollingStaysWithinBudget() {
+    mScroller.decoration.setSectionIndexEnabled(true);
+    // The first round trip creates the headers of the scrolled range
+    mBudget.setWarmUpFrames(2 * FRAMES_PER_SWEEP + 1);
+    mBudget.setMaxHeaderIdLookups(0);
+    mBudget.setMaxHeaderCreations(0);
+    mBudget.setMaxHeaderMeasures(0);
+    mBudget.setMaxAllocations(0);
+
+    mScroller.sweep(5, FRAMES_PER_SWEEP, SCROLL_PER_FRAME);
+
+    assertTrue(mBudget.getFrameCount() > 2 * FRAMES_PER_SWEEP);
+  }
+
+  @Test
+  public void unindexedScrollingLooksUpLaidOutItemsOnly() {
+    mBudget.setWarmUpFrames(2 * FRAMES_PER_SWEEP + 1);
+    // A handful of header ids per laid out item: whether it starts a section, and the offsets and push-off
+    mBudget.setMaxHeaderIdLookups(4 * (FrameScroller.HEIGHT / ITEM_SIZE + 2));
+    mBudget.setMaxHeaderCreations(0);
+    mBudget.setMaxHeaderMeasures(0);
+    mBudget.setMaxAllocations(0);
+
+    mScroller.sweep(5, FRAMES_PER_SWEEP, SCROLL_PER_FRAME);
+  }
+
+  @Test
+  public void lookupRegressionFailsTheFrame() {
+    mBudget.setWarmUpFrames(2 * FRAMES_PER_SWEEP + 1);
+    mBudget.setMaxHeaderIdLookups(0);
+
+    try {
+      mScroller.sweep(2, FRAMES_PER_SWEEP, SCROLL_PER_FRAME);
+      fail("Looking up header ids without the section index should exceed a budget of 0");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  /**
+   * Counts the bytes allocated by the test thread, since the JVM has no allocation count. A budget of no
+   * allocations is a budget of no bytes.
+   */
+  private static class JvmFrameBudgetMetrics extends FrameBudgetMetrics {
+
+    private final com.sun.management.ThreadMXBean mThreadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long mThreadId = Thread.currentThread().getId();
+
+    /**
+     * Bytes allocated by a read of the counter between the two points it measures, and number of reads
+     */
+    private long mReadCost;
+    private long mReadCount;
+
+    @Override
+    protected void startAllocCounting() {
+      mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+      long first = mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+      long second = mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+      mReadCost = second - first;
+    }
+
+    @Override
+    protected void stopAllocCounting() {
+    }
+
+    @Override
+    protected int getThreadAllocCount() {
+      long bytes = mThreadMXBean.getThreadAllocatedBytes(mThreadId);
+      return (int) (bytes - mReadCost * mReadCount++);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Lays out a RecyclerView with a {@link StickyRecyclerHeadersDecoration} and scrolls it frame by frame
+ * under Robolectric. Each frame scrolls, measures and lays out the RecyclerView, which calls
+ * {@code getItemOffsets} for the items it lays out, and then calls {@code onDrawOver} on a canvas that
+ * doesn't draw, so that a frame only runs the code of the decoration and of the RecyclerView.
+ */
+public class FrameScroller {
+
+  public static final int WIDTH = 480;
+  public static final int HEIGHT = 800;
+
+  public final TestViewAdapter adapter;
+  public final RecyclerView recyclerView;
+  public final StickyRecyclerHeadersDecoration decoration;
+
+  private final LinearLayoutManager mLayoutManager;
+  private final boolean mVertical;
+  private final Canvas mCanvas = new BlankCanvas();
+  private final RecyclerView.State mState = new RecyclerView.State();
+
+  /**
+   * @param orientation     {@link LinearLayoutManager#VERTICAL} or {@link LinearLayoutManager#HORIZONTAL}
+   * @param reverseLayout   true to lay the items out from the end
+   * @param itemCount       number of items
+   * @param itemsPerSection number of items with the same header id
+   * @param itemSize        size of the items in the scrolling direction
+   * @param headerSize      size of the headers in the scrolling direction
+   */
+  public FrameScroller(int orientation, boolean reverseLayout, int itemCount, int itemsPerSection, int itemSize,
+      int headerSize) {
+    mVertical = orientation == LinearLayoutManager.VERTICAL;
+    adapter = new TestViewAdapter(itemCount, itemsPerSection, itemSize, headerSize, mVertical);
+    recyclerView = new RecyclerView(RuntimeEnvironment.application);
+    mLayoutManager = new LinearLayoutManager(RuntimeEnvironment.application, orientation, reverseLayout);
+    recyclerView.setLayoutManager(mLayoutManager);
+    recyclerView.setAdapter(adapter);
+    decoration = new StickyRecyclerHeadersDecoration(adapter);
+    recyclerView.addItemDecoration(decoration);
+  }
+
+  /**
+   * @param position to show at the start of the list on the next frame
+   */
+  public void scrollToPosition(int position) {
+    mLayoutManager.scrollToPositionWithOffset(position, 0);
+  }
+
+  /**
+   * Scrolls one way and back again, one frame at a time, after drawing a frame without scrolling.
+   *
+   * @param roundTrips     number of times to scroll there and back
+   * @param framesPerSweep number of frames to scroll in each direction
+   * @param scrollPerFrame distance to scroll per frame
+   */
+  public void sweep(int roundTrips, int framesPerSweep, int scrollPerFrame) {
+    drawFrame(0);
+    for (int i = 0; i < roundTrips; i++) {
+      for (int frame = 0; frame < framesPerSweep; frame++) {
+        drawFrame(scrollPerFrame);
+      }
+      for (int frame = 0; frame < framesPerSweep; frame++) {
+        drawFrame(-scrollPerFrame);
+      }
+    }
+  }
+
+  /**
+   * @param distance to scroll with {@link RecyclerView#scrollBy(int, int)} before laying out and drawing
+   */
+  public void drawFrame(int distance) {
+    if (distance != 0) {
+      recyclerView.scrollBy(mVertical ? 0 : distance, mVertical ? distance : 0);
+    }
+    recyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+    recyclerView.layout(0, 0, WIDTH, HEIGHT);
+    decoration.onDrawOver(mCanvas, recyclerView, mState);
+  }
+
+  /**
+   * A canvas that ignores the calls made to draw a header.
+   */
+  private static class BlankCanvas extends Canvas {
+
+    @Override
+    public int save() {
+      return 0;
+    }
+
+    @Override
+    public void restore() {
+    }
+
+    @Override
+    public boolean clipRect(Rect rect) {
+      return true;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+  }
+}
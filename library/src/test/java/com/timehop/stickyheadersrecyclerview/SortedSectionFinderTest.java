@@ -0,0 +1,145 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SortedSectionFinderTest {
+
+  private static final int ROW_COUNT = 1000000;
+  private static final int ROWS_PER_SECTION = 1000;
+
+  private CountingKeyAccessor mKeys;
+  private SortedSectionFinder mFinder;
+
+  @Before
+  public void setUp() {
+    long[] keys = new long[ROW_COUNT];
+    for (int i = 0; i < ROW_COUNT; i++) {
+      keys[i] = i / ROWS_PER_SECTION;
+    }
+    mKeys = new CountingKeyAccessor(keys);
+    mFinder = new SortedSectionFinder(mKeys);
+  }
+
+  @Test
+  public void findsSectionBoundaries() {
+    assertEquals(0, mFinder.getSectionStart(0));
+    assertEquals(999, mFinder.getSectionEnd(0));
+    assertEquals(5000, mFinder.getSectionStart(5999));
+    assertEquals(5999, mFinder.getSectionEnd(5000));
+    assertEquals(999000, mFinder.getSectionStart(ROW_COUNT - 1));
+    assertEquals(ROW_COUNT - 1, mFinder.getSectionEnd(999500));
+  }
+
+  @Test
+  public void singleRowSections() {
+    SortedSectionFinder finder = new SortedSectionFinder(new CountingKeyAccessor(new long[] {1, 2, 2, 3}));
+    assertEquals(0, finder.getSectionStart(0));
+    assertEquals(0, finder.getSectionEnd(0));
+    assertEquals(1, finder.getSectionStart(2));
+    assertEquals(2, finder.getSectionEnd(1));
+    assertEquals(3, finder.getSectionStart(3));
+    assertEquals(3, finder.getSectionEnd(3));
+  }
+
+  @Test
+  public void findsSectionStartByKey() {
+    assertEquals(0, mFinder.findSectionStart(0));
+    assertEquals(123000, mFinder.findSectionStart(123));
+    assertEquals(-1, mFinder.findSectionStart(-5));
+    assertEquals(-1, mFinder.findSectionStart(ROW_COUNT));
+  }
+
+  @Test
+  public void findsSectionStartByKeyInDescendingData() {
+    SortedSectionFinder finder = new SortedSectionFinder(new CountingKeyAccessor(new long[] {9, 9, 7, 4, 4, 4, 1}));
+    assertEquals(0, finder.findSectionStart(9));
+    assertEquals(2, finder.findSectionStart(7));
+    assertEquals(3, finder.findSectionStart(4));
+    assertEquals(6, finder.findSectionStart(1));
+    assertEquals(-1, finder.findSectionStart(5));
+  }
+
+  @Test
+  public void fillsHeaderIdRanges() {
+    long[] out = new long[5];
+    mFinder.getHeaderIds(1998, 5, out);
+    assertArrayEquals(new long[] {1, 1, 2, 2, 2}, out);
+  }
+
+  @Test
+  public void boundaryLookupsTouchFewKeys() {
+    mFinder.getSectionStart(500500);
+    mFinder.getSectionEnd(500500);
+    // Galloping and binary search in both directions, not a scan of the 1000 rows of the section
+    assertTrue("read " + mKeys.readCount + " keys", mKeys.readCount <= 4 * 11);
+  }
+
+  @Test
+  public void cachedBoundariesAreNotSearchedAgain() {
+    mFinder.getSectionStart(42);
+    int readCount = mKeys.readCount;
+    mFinder.getSectionEnd(900);
+    mFinder.getSectionStart(0);
+    assertEquals(readCount, mKeys.readCount);
+  }
+
+  @Test
+  public void headerIdRangeReadsOneKeyPerSection() {
+    long[] out = new long[ROWS_PER_SECTION * 10];
+    mFinder.getHeaderIds(0, out.length, out);
+    // One key per section for the ids, plus the searches for the ten boundaries
+    assertTrue("read " + mKeys.readCount + " keys", mKeys.readCount < 10 * 2 * 11 + 10);
+  }
+
+  @Test
+  public void invalidateDropsCachedBoundaries() {
+    long[] keys = {1, 1, 2, 2};
+    SortedSectionFinder finder = new SortedSectionFinder(new CountingKeyAccessor(keys));
+    assertEquals(1, finder.getSectionEnd(0));
+    keys[1] = 2;
+    finder.invalidate();
+    assertEquals(0, finder.getSectionEnd(0));
+  }
+
+  @Test
+  public void rejectsNegativeKeys() {
+    SortedSectionFinder finder = new SortedSectionFinder(new CountingKeyAccessor(new long[] {-2, -1, -1, 0}));
+    assertEquals(0, finder.getHeaderId(3));
+    try {
+      finder.getHeaderId(1);
+      fail("A negative key would be read as an item without a header");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      finder.getHeaderIds(0, 4, new long[4]);
+      fail("A negative key would be read as an item without a header");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  private static class CountingKeyAccessor implements SortedSectionFinder.KeyAccessor {
+    final long[] mKeys;
+    int readCount;
+
+    CountingKeyAccessor(long[] keys) {
+      mKeys = keys;
+    }
+
+    @Override
+    public long getKey(int position) {
+      readCount++;
+      return mKeys[position];
+    }
+
+    @Override
+    public int getCount() {
+      return mKeys.length;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StickyRecyclerHeadersSectionIndexerTest {
+
+  private HeadersAdapter mAdapter;
+  private StickyRecyclerHeadersSectionIndexer mIndexer;
+
+  @Before
+  public void setUp() {
+    // Sections: [0, 2) id 7, [2, 5) id 3, [5, 6) id 7
+    mAdapter = new HeadersAdapter(7, 7, 3, 3, 3, 7);
+    mIndexer = new StickyRecyclerHeadersSectionIndexer(new StickyRecyclerHeadersDecoration(mAdapter));
+  }
+
+  @Test
+  public void findsFirstSectionOfHeaderId() {
+    assertEquals(0, mIndexer.getSectionForHeaderId(7));
+    assertEquals(1, mIndexer.getSectionForHeaderId(3));
+    assertEquals(-1, mIndexer.getSectionForHeaderId(5));
+  }
+
+  @Test
+  public void sectionsAreReadOnce() {
+    Object[] sections = mIndexer.getSections();
+    assertArrayEquals(new Object[] {7L, 3L, 7L}, sections);
+    mIndexer.getSectionForHeaderId(3);
+    int lookupCount = mAdapter.lookupCount;
+
+    assertSame(sections, mIndexer.getSections());
+    assertEquals(1, mIndexer.getSectionForHeaderId(3));
+    assertEquals(lookupCount, mAdapter.lookupCount);
+  }
+
+  @Test
+  public void sectionsAreReadAgainAfterChange() {
+    mIndexer.getSections();
+    mAdapter.headerIds.addAll(0, Arrays.asList(5L, 5L));
+    mAdapter.notifyItemRangeInserted(0, 2);
+
+    assertArrayEquals(new Object[] {5L, 7L, 3L, 7L}, mIndexer.getSections());
+    assertEquals(0, mIndexer.getSectionForHeaderId(5));
+    assertEquals(2, mIndexer.getSectionForHeaderId(3));
+  }
+
+  private static class HeadersAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+      implements StickyRecyclerHeadersAdapter<RecyclerView.ViewHolder> {
+
+    final List<Long> headerIds = new ArrayList<>();
+    int lookupCount;
+
+    HeadersAdapter(long... headerIds) {
+      for (long headerId : headerIds) {
+        this.headerIds.add(headerId);
+      }
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+      return null;
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+    }
+
+    @Override
+    public int getItemCount() {
+      return headerIds.size();
+    }
+
+    @Override
+    public long getHeaderId(int position) {
+      lookupCount++;
+      return headerIds.get(position);
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateHeaderViewHolder(ViewGroup parent) {
+      return null;
+    }
+
+    @Override
+    public void onBindHeaderViewHolder(RecyclerView.ViewHolder holder, int position) {
+    }
+  }
+}
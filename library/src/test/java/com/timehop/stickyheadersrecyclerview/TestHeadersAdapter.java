@@ -0,0 +1,43 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link StickyRecyclerHeadersAdapter} over a list of header ids that counts the header id lookups
+ * made through it. Doesn't create header views.
+ */
+public class TestHeadersAdapter implements StickyRecyclerHeadersAdapter<RecyclerView.ViewHolder> {
+
+  public final List<Long> headerIds = new ArrayList<>();
+  public int lookupCount;
+
+  public TestHeadersAdapter(long... headerIds) {
+    for (long headerId : headerIds) {
+      this.headerIds.add(headerId);
+    }
+  }
+
+  @Override
+  public long getHeaderId(int position) {
+    lookupCount++;
+    return headerIds.get(position);
+  }
+
+  @Override
+  public RecyclerView.ViewHolder onCreateHeaderViewHolder(ViewGroup parent) {
+    return null;
+  }
+
+  @Override
+  public void onBindHeaderViewHolder(RecyclerView.ViewHolder holder, int position) {
+  }
+
+  @Override
+  public int getItemCount() {
+    return headerIds.size();
+  }
+}
@@ -0,0 +1,94 @@
+package com.timehop.stickyheadersrecyclerview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * A RecyclerView adapter of fixed size items in sections of equal length, for tests that lay out a real
+ * RecyclerView. Counts the header binds and header id lookups made through it, and doesn't allocate once
+ * its views are created. Its views don't draw anything.
+ */
+public class TestViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+    implements StickyRecyclerHeadersAdapter<RecyclerView.ViewHolder> {
+
+  public final int[] headerBindCounts;
+  public int lookupCount;
+
+  private final int mItemCount;
+  private final int mItemsPerSection;
+  private final int mItemSize;
+  private final int mHeaderSize;
+  private final boolean mVertical;
+
+  /**
+   * @param itemCount       number of items
+   * @param itemsPerSection number of items with the same header id
+   * @param itemSize        height of the items in a vertical list, or width in a horizontal one
+   * @param headerSize      height of the headers in a vertical list, or width in a horizontal one
+   * @param vertical        true if the items are laid out in a vertical list
+   */
+  public TestViewAdapter(int itemCount, int itemsPerSection, int itemSize, int headerSize, boolean vertical) {
+    mItemCount = itemCount;
+    mItemsPerSection = itemsPerSection;
+    mItemSize = itemSize;
+    mHeaderSize = headerSize;
+    mVertical = vertical;
+    headerBindCounts = new int[itemCount];
+  }
+
+  @Override
+  public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+    return createViewHolder(parent.getContext(), mItemSize);
+  }
+
+  @Override
+  public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+  }
+
+  @Override
+  public int getItemCount() {
+    return mItemCount;
+  }
+
+  @Override
+  public long getHeaderId(int position) {
+    lookupCount++;
+    return position / mItemsPerSection;
+  }
+
+  @Override
+  public RecyclerView.ViewHolder onCreateHeaderViewHolder(ViewGroup parent) {
+    return createViewHolder(parent.getContext(), mHeaderSize);
+  }
+
+  @Override
+  public void onBindHeaderViewHolder(RecyclerView.ViewHolder holder, int position) {
+    headerBindCounts[position]++;
+  }
+
+  private RecyclerView.ViewHolder createViewHolder(Context context, int size) {
+    View view = new BlankView(context);
+    view.setLayoutParams(mVertical
+        ? new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, size)
+        : new RecyclerView.LayoutParams(size, ViewGroup.LayoutParams.MATCH_PARENT));
+    return new RecyclerView.ViewHolder(view) {
+    };
+  }
+
+  /**
+   * A view that draws nothing, so that drawing headers only exercises the decoration.
+   */
+  private static class BlankView extends View {
+
+    BlankView(Context context) {
+      super(context);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+    }
+  }
+}
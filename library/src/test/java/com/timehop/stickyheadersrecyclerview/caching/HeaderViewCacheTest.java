@@ -0,0 +1,85 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.timehop.stickyheadersrecyclerview.TestViewAdapter;
+import com.timehop.stickyheadersrecyclerview.util.LinearLayoutOrientationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class HeaderViewCacheTest {
+
+  private static final int ITEMS_PER_SECTION = 10;
+
+  private TestViewAdapter mAdapter;
+  private RecyclerView mRecyclerView;
+  private HeaderViewCache mCache;
+
+  @Before
+  public void setUp() {
+    Context context = RuntimeEnvironment.application;
+    mAdapter = new TestViewAdapter(100, ITEMS_PER_SECTION, 100, 50, true);
+    mRecyclerView = new RecyclerView(context);
+    mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+    mRecyclerView.setAdapter(mAdapter);
+    mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+    mRecyclerView.layout(0, 0, 480, 800);
+    mCache = new HeaderViewCache(mAdapter, new LinearLayoutOrientationProvider());
+    mCache.setRecycleOffscreenHeaders(true);
+  }
+
+  @Test
+  public void prefetchedHeaderIsBoundOnce() {
+    mCache.startFrame();
+    showSection(0);
+    mCache.prefetchHeader(mRecyclerView, ITEMS_PER_SECTION, 1);
+
+    // The prefetched section takes a few frames to scroll in
+    for (int i = 0; i < 3; i++) {
+      mCache.startFrame();
+      showSection(0);
+    }
+    mCache.startFrame();
+    showSection(0);
+    showSection(1);
+
+    assertEquals(1, mAdapter.headerBindCounts[ITEMS_PER_SECTION]);
+    assertEquals(2, mCache.size());
+  }
+
+  @Test
+  public void shownHeaderIsRecycledOffscreen() {
+    mCache.startFrame();
+    showSection(0);
+    mCache.prefetchHeader(mRecyclerView, ITEMS_PER_SECTION, 1);
+    mCache.startFrame();
+    showSection(1);
+
+    // Neither header is prefetched anymore, so the one that went off screen goes back to the pool
+    mCache.startFrame();
+    showSection(1);
+    assertEquals(1, mCache.size());
+
+    mCache.startFrame();
+    showSection(0);
+    assertEquals(2, mAdapter.headerBindCounts[0]);
+    assertEquals(1, mAdapter.headerBindCounts[ITEMS_PER_SECTION]);
+  }
+
+  private void showSection(int section) {
+    mCache.getHeader(mRecyclerView, section * ITEMS_PER_SECTION, section);
+  }
+}
@@ -0,0 +1,314 @@
+package com.timehop.stickyheadersrecyclerview.caching;
+
+import com.timehop.stickyheadersrecyclerview.TestHeadersAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SectionIndexTest {
+
+  private TestHeadersAdapter mAdapter;
+  private SectionIndex mSectionIndex;
+
+  @Before
+  public void setUp() {
+    // Sections: [0, 3) id 1, [3, 5) id 2, [5, 6) id 3
+    mAdapter = new TestHeadersAdapter(1, 1, 1, 2, 2, 3);
+    mSectionIndex = new SectionIndex(mAdapter);
+    mSectionIndex.setEnabled(true);
+    assertSections(0, 1, 3, 2, 5, 3);
+  }
+
+  @Test
+  public void buildsRuns() {
+    assertEquals(6, mSectionIndex.getItemCount());
+    assertTrue(mSectionIndex.isSectionStart(3));
+    assertFalse(mSectionIndex.isSectionStart(4));
+    assertTrue(mSectionIndex.isSectionEnd(4));
+    assertFalse(mSectionIndex.isSectionEnd(3));
+    assertEquals(2, mSectionIndex.getHeaderId(4));
+    assertEquals(4, mSectionIndex.getLastPositionForSection(1));
+    assertEquals(5, mSectionIndex.getLastPositionForSection(2));
+  }
+
+  @Test
+  public void insertAtSectionStart() {
+    insert(3, 7, 7);
+    assertSections(0, 1, 3, 7, 5, 2, 7, 3);
+  }
+
+  @Test
+  public void insertSplittingSection() {
+    insert(1, 7);
+    assertSections(0, 1, 1, 7, 2, 1, 4, 2, 6, 3);
+  }
+
+  @Test
+  public void insertMergingWithPreviousSection() {
+    insert(3, 1, 1);
+    assertSections(0, 1, 5, 2, 7, 3);
+  }
+
+  @Test
+  public void insertMergingWithNextSection() {
+    insert(3, 2);
+    assertSections(0, 1, 3, 2, 6, 3);
+  }
+
+  @Test
+  public void insertAtEnds() {
+    insert(0, 0);
+    insert(7, 3, 4);
+    assertSections(0, 0, 1, 1, 4, 2, 6, 3, 8, 4);
+  }
+
+  @Test
+  public void removeWholeSection() {
+    remove(3, 2);
+    assertSections(0, 1, 3, 3);
+  }
+
+  @Test
+  public void removeSectionMergesNeighbours() {
+    mAdapter.headerIds.set(5, 1L);
+    mSectionIndex.onItemRangeChanged(5, 1);
+    remove(3, 2);
+    assertSections(0, 1);
+    assertEquals(4, mSectionIndex.getItemCount());
+  }
+
+  @Test
+  public void removeAcrossSectionBoundary() {
+    remove(2, 2);
+    assertSections(0, 1, 2, 2, 3, 3);
+  }
+
+  @Test
+  public void removeSectionStart() {
+    remove(3, 1);
+    assertSections(0, 1, 3, 2, 4, 3);
+  }
+
+  @Test
+  public void removeEverything() {
+    remove(0, 6);
+    assertEquals(0, mSectionIndex.getSectionCount());
+    assertEquals(0, mSectionIndex.getItemCount());
+    insert(0, 5, 5);
+    assertSections(0, 5);
+  }
+
+  @Test
+  public void changeSplitsSection() {
+    change(1, 9);
+    assertSections(0, 1, 1, 9, 2, 1, 3, 2, 5, 3);
+  }
+
+  @Test
+  public void changeMergesSections() {
+    change(3, 1, 1);
+    assertSections(0, 1, 5, 3);
+  }
+
+  @Test
+  public void changeSectionStartToNextId() {
+    change(2, 2);
+    assertSections(0, 1, 2, 2, 5, 3);
+  }
+
+  @Test
+  public void moveBetweenSections() {
+    move(0, 4);
+    assertSections(0, 1, 2, 2, 4, 1, 5, 3);
+  }
+
+  @Test
+  public void moveMergingSections() {
+    move(5, 0);
+    assertSections(0, 3, 1, 1, 4, 2);
+    move(0, 5);
+    assertSections(0, 1, 3, 2, 5, 3);
+  }
+
+  @Test
+  public void moveWithinSection() {
+    move(1, 2);
+    assertSections(0, 1, 3, 2, 5, 3);
+  }
+
+  @Test
+  public void changedDataRebuildsTable() {
+    mAdapter.headerIds.clear();
+    mAdapter.headerIds.addAll(Arrays.asList(4L, 5L));
+    mSectionIndex.onChanged();
+    assertSections(0, 4, 1, 5);
+  }
+
+  @Test
+  public void emptyTable() {
+    mAdapter.headerIds.clear();
+    mSectionIndex.onChanged();
+    assertEquals(0, mSectionIndex.getSectionCount());
+    assertEquals(-1, mSectionIndex.getSectionForPosition(0));
+    try {
+      mSectionIndex.getHeaderId(0);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      mSectionIndex.isSectionStart(0);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  @Test
+  public void negativePosition() {
+    assertEquals(-1, mSectionIndex.getSectionForPosition(-1));
+    try {
+      mSectionIndex.isSectionEnd(-1);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  @Test
+  public void rangeOutsideTableRebuilds() {
+    mAdapter.headerIds.add(8L);
+    mSectionIndex.onItemRangeRemoved(6, 2);
+    assertSections(0, 1, 3, 2, 5, 3, 6, 8);
+  }
+
+  @Test
+  public void updatesOnlyReadInsertedItems() {
+    int lookupCount = mAdapter.lookupCount;
+    insert(2, 1, 2, 2);
+    remove(0, 1);
+    assertEquals(lookupCount + 3, mAdapter.lookupCount);
+  }
+
+  @Test
+  public void updatesOfLargeTableOnlyReadInsertedItems() {
+    TestHeadersAdapter adapter = new TestHeadersAdapter();
+    for (int i = 0; i < 100000; i++) {
+      adapter.headerIds.add((long) (i / 20));
+    }
+    SectionIndex sectionIndex = new SectionIndex(adapter);
+    sectionIndex.setEnabled(true);
+    sectionIndex.getSectionCount();
+    int lookupCount = adapter.lookupCount;
+
+    for (int i = 0; i < 100; i++) {
+      adapter.headerIds.add(50000, 1000000L + i);
+      sectionIndex.onItemRangeInserted(50000, 1);
+    }
+
+    assertEquals(lookupCount + 100, adapter.lookupCount);
+    // Inserted at a section start, so no existing section was split
+    assertEquals(100000 / 20 + 100, sectionIndex.getSectionCount());
+  }
+
+  @Test
+  public void randomUpdatesMatchRebuiltTable() {
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      int itemCount = mAdapter.headerIds.size();
+      switch (random.nextInt(4)) {
+        case 0: {
+          int position = random.nextInt(itemCount + 1);
+          long[] ids = new long[1 + random.nextInt(3)];
+          for (int j = 0; j < ids.length; j++) {
+            ids[j] = random.nextInt(4);
+          }
+          insert(position, ids);
+          break;
+        }
+        case 1:
+          if (itemCount > 0) {
+            int position = random.nextInt(itemCount);
+            remove(position, 1 + random.nextInt(Math.min(3, itemCount - position)));
+          }
+          break;
+        case 2:
+          if (itemCount > 0) {
+            change(random.nextInt(itemCount), random.nextInt(4));
+          }
+          break;
+        default:
+          if (itemCount > 0) {
+            move(random.nextInt(itemCount), random.nextInt(itemCount));
+          }
+          break;
+      }
+      assertMatchesRebuiltTable();
+    }
+  }
+
+  private void insert(int position, long... headerIds) {
+    for (int i = 0; i < headerIds.length; i++) {
+      mAdapter.headerIds.add(position + i, headerIds[i]);
+    }
+    mSectionIndex.onItemRangeInserted(position, headerIds.length);
+  }
+
+  private void remove(int position, int count) {
+    for (int i = 0; i < count; i++) {
+      mAdapter.headerIds.remove(position);
+    }
+    mSectionIndex.onItemRangeRemoved(position, count);
+  }
+
+  private void change(int position, long... headerIds) {
+    for (int i = 0; i < headerIds.length; i++) {
+      mAdapter.headerIds.set(position + i, headerIds[i]);
+    }
+    mSectionIndex.onItemRangeChanged(position, headerIds.length);
+  }
+
+  private void move(int from, int to) {
+    mAdapter.headerIds.add(to, mAdapter.headerIds.remove(from));
+    mSectionIndex.onItemRangeMoved(from, to, 1);
+  }
+
+  /**
+   * @param expected pairs of section start and header id
+   */
+  private void assertSections(long... expected) {
+    long[] actual = new long[mSectionIndex.getSectionCount() * 2];
+    for (int section = 0; section < mSectionIndex.getSectionCount(); section++) {
+      actual[section * 2] = mSectionIndex.getPositionForSection(section);
+      actual[section * 2 + 1] = mSectionIndex.getHeaderIdForSection(section);
+    }
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    assertEquals(mAdapter.headerIds.size(), mSectionIndex.getItemCount());
+  }
+
+  private void assertMatchesRebuiltTable() {
+    SectionIndex rebuilt = new SectionIndex(new TestHeadersAdapter(toArray(mAdapter.headerIds)));
+    rebuilt.setEnabled(true);
+    List<Long> expected = new ArrayList<>();
+    for (int section = 0; section < rebuilt.getSectionCount(); section++) {
+      expected.add((long) rebuilt.getPositionForSection(section));
+      expected.add(rebuilt.getHeaderIdForSection(section));
+    }
+    assertSections(toArray(expected));
+  }
+
+  private static long[] toArray(List<Long> values) {
+    long[] array = new long[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+}
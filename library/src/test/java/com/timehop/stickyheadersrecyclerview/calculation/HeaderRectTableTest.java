@@ -0,0 +1,68 @@
+package com.timehop.stickyheadersrecyclerview.calculation;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HeaderRectTableTest {
+
+  @Test
+  public void containsFollowsRectSemantics() {
+    HeaderRectTable table = new HeaderRectTable();
+    table.add(3, rect(0, 10, 100, 30));
+
+    assertTrue(table.contains(0, 0, 10));
+    assertTrue(table.contains(0, 99, 29));
+    assertFalse(table.contains(0, 100, 20));
+    assertFalse(table.contains(0, 50, 30));
+    assertFalse(table.contains(0, 50, 9));
+    assertEquals(3, table.getPosition(0));
+  }
+
+  @Test
+  public void emptyBoundsContainNothing() {
+    HeaderRectTable table = new HeaderRectTable();
+    table.add(0, rect(10, 10, 10, 20));
+    assertFalse(table.contains(0, 10, 15));
+  }
+
+  @Test
+  public void growsAndKeepsEntriesInOrder() {
+    HeaderRectTable table = new HeaderRectTable();
+    for (int i = 0; i < 100; i++) {
+      table.add(i * 2, rect(0, i * 10, 50, i * 10 + 10));
+    }
+    assertEquals(100, table.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i * 2, table.getPosition(i));
+      assertTrue(table.contains(i, 25, i * 10 + 5));
+      assertFalse(table.contains(i, 25, i * 10 + 15));
+    }
+  }
+
+  @Test
+  public void clearKeepsNothing() {
+    HeaderRectTable table = new HeaderRectTable();
+    table.add(0, rect(0, 0, 10, 10));
+    table.clear();
+    assertEquals(0, table.size());
+    table.add(7, rect(0, 0, 10, 10));
+    assertEquals(7, table.getPosition(0));
+  }
+
+  /**
+   * Rect's methods are stubbed out in unit tests, so the fields are set directly.
+   */
+  private static Rect rect(int left, int top, int right, int bottom) {
+    Rect rect = new Rect();
+    rect.left = left;
+    rect.top = top;
+    rect.right = right;
+    rect.bottom = bottom;
+    return rect;
+  }
+}
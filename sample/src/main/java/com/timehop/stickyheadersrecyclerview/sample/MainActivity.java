@@ -16,6 +16,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
+import com.timehop.stickyheadersrecyclerview.HeaderInvalidationObserver;
 import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersAdapter;
 import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersDecoration;
 import com.timehop.stickyheadersrecyclerview.StickyRecyclerHeadersTouchListener;
@@ -86,12 +87,7 @@ public class MainActivity extends AppCompatActivity {
         adapter.remove(adapter.getItem(position));
       }
     }));
-    adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
-      @Override
-      public void onChanged() {
-        headersDecor.invalidateHeaders();
-      }
-    });
+    adapter.registerAdapterDataObserver(new HeaderInvalidationObserver(headersDecor));
 
     isReverseButton.setOnClickListener(new View.OnClickListener() {
       @Override